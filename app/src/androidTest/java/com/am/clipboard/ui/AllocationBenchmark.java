@@ -0,0 +1,128 @@
+package com.am.clipboard.ui;
+
+import android.content.Context;
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.am.clipboard.SuperClipboard;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Allocation rate of repeated copy and paste, run on a device:
+ * ./gradlew :app:connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=com.am.clipboard.ui.AllocationBenchmark
+ * Counts bytes allocated by the whole process across steady-state round trips, after warm-up
+ * has filled the per-thread buffer pools. A copy buffer allocated per item, as before pooling,
+ * would show at least 64 KiB per item. Results are logged under the AllocationBenchmark tag.
+ */
+@SuppressWarnings("deprecation")
+@RunWith(AndroidJUnit4.class)
+public class AllocationBenchmark {
+
+    private static final String TAG = "AllocationBenchmark";
+    private static final int ITEMS = 32;
+    private static final int WARM_UP = 5;
+    private static final int ROUNDS = 20;
+    private Context mContext;
+    private String mMimeType;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mMimeType = SuperClipboard.getMime("vnd.projectx.allocation");
+    }
+
+    @After
+    public void tearDown() {
+        Debug.stopAllocCounting();
+    }
+
+    @Test
+    public void bytes() {
+        final byte[][] items = new byte[ITEMS][4 * 1024];
+        final Random random = new Random(0);
+        for (byte[] item : items) {
+            random.nextBytes(item);
+        }
+        measure("bytes", ITEMS, () -> {
+            assertTrue(SuperClipboard.setPrimaryClipBytes(mContext, mMimeType, items));
+            final List<byte[]> read = SuperClipboard.getPrimaryClipBytes(mContext, 0);
+            assertNotNull(read);
+        });
+    }
+
+    @Test
+    public void serializable() {
+        final Serializable[] items = new Serializable[ITEMS];
+        for (int i = 0; i < ITEMS; i++) {
+            items[i] = "Item:" + i;
+        }
+        measure("serializable", ITEMS, () -> {
+            assertTrue(SuperClipboard.setPrimaryClip(mContext, mMimeType, items));
+            final List<String> read = SuperClipboard.getPrimaryClipSerializables(mContext);
+            assertEquals(ITEMS, read.size());
+        });
+    }
+
+    @Test
+    public void file() throws IOException {
+        final File source = new File(mContext.getCacheDir(), "allocation_source");
+        final File target = new File(mContext.getCacheDir(), "allocation_target");
+        final byte[] buffer = new byte[1024 * 1024];
+        new Random(0).nextBytes(buffer);
+        try (OutputStream output = new FileOutputStream(source)) {
+            output.write(buffer);
+        }
+        try {
+            measure("file", 1, () -> {
+                assertTrue(SuperClipboard.setPrimaryClip(mContext, mMimeType, source));
+                assertTrue(SuperClipboard.getPrimaryClipFile(mContext, target));
+            });
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            source.delete();
+            //noinspection ResultOfMethodCallIgnored
+            target.delete();
+        }
+    }
+
+    private void measure(String name, int items, Runnable roundTrip) {
+        // Only the focused app may read the clipboard
+        try (ActivityScenario<MainActivity> ignored = ActivityScenario.launch(MainActivity.class)) {
+            for (int i = 0; i < WARM_UP; i++) {
+                roundTrip.run();
+            }
+            Debug.resetGlobalAllocSize();
+            Debug.resetGlobalAllocCount();
+            Debug.startAllocCounting();
+            for (int i = 0; i < ROUNDS; i++) {
+                roundTrip.run();
+            }
+            Debug.stopAllocCounting();
+            final long size = Debug.getGlobalAllocSize();
+            final long count = Debug.getGlobalAllocCount();
+            Log.i(TAG, String.format(Locale.US, "%s: %d bytes, %d objects per round trip, " +
+                            "%.1f bytes per item", name, size / ROUNDS, count / ROUNDS,
+                    (double) size / ROUNDS / items));
+            SuperClipboard.clearPrimaryClip(mContext);
+        }
+    }
+}
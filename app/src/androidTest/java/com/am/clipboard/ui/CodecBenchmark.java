@@ -0,0 +1,252 @@
+package com.am.clipboard.ui;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.am.clipboard.SuperClipboard;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Codec against Serializable, run on a device:
+ * ./gradlew :app:connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=com.am.clipboard.ui.CodecBenchmark
+ * Encodes and decodes a record shaped like the demo ClipboardBean, one stream per object as the
+ * clipboard stores items, then times a copy and paste of the same list through the clipboard.
+ * Results are logged under the CodecBenchmark tag.
+ */
+@RunWith(Parameterized.class)
+public class CodecBenchmark {
+
+    private static final String TAG = "CodecBenchmark";
+    private static final int ROUNDS = 10;
+    private static final SuperClipboard.Codec<Bean> CODEC = new SuperClipboard.Codec<Bean>() {
+        @Override
+        public void encode(Bean item, DataOutput output) throws IOException {
+            output.writeByte(item.mByte);
+            output.writeShort(item.mShort);
+            output.writeInt(item.mInt);
+            output.writeLong(item.mLong);
+            output.writeFloat(item.mFloat);
+            output.writeDouble(item.mDouble);
+            output.writeBoolean(item.mBoolean);
+            output.writeChar(item.mChar);
+            output.writeUTF(item.mString);
+        }
+
+        @Override
+        public Bean decode(DataInput input) throws IOException {
+            return new Bean(input.readByte(), input.readShort(), input.readInt(),
+                    input.readLong(), input.readFloat(), input.readDouble(),
+                    input.readBoolean(), input.readChar(), input.readUTF());
+        }
+    };
+    private final int mCount;
+    private Context mContext;
+    private List<Bean> mItems;
+
+    public CodecBenchmark(int count) {
+        mCount = count;
+    }
+
+    @Parameterized.Parameters(name = "count={0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{{1}, {100}, {10000}});
+    }
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        final Random random = new Random(0);
+        mItems = new ArrayList<>(mCount);
+        for (int i = 0; i < mCount; i++) {
+            mItems.add(Bean.test(random));
+        }
+    }
+
+    @Test
+    public void encodeDecode() throws Exception {
+        final long[] codecEncodes = new long[ROUNDS];
+        final long[] codecDecodes = new long[ROUNDS];
+        final long[] serialEncodes = new long[ROUNDS];
+        final long[] serialDecodes = new long[ROUNDS];
+        long codecBytes = 0;
+        long serialBytes = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            final List<byte[]> codecData = new ArrayList<>(mCount);
+            for (Bean item : mItems) {
+                final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                try (DataOutputStream output = new DataOutputStream(stream)) {
+                    CODEC.encode(item, output);
+                }
+                codecData.add(stream.toByteArray());
+            }
+            codecEncodes[i] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int j = 0; j < mCount; j++) {
+                try (DataInputStream input = new DataInputStream(
+                        new ByteArrayInputStream(codecData.get(j)))) {
+                    assertEquals(mItems.get(j), CODEC.decode(input));
+                }
+            }
+            codecDecodes[i] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            final List<byte[]> serialData = new ArrayList<>(mCount);
+            for (Bean item : mItems) {
+                final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                try (ObjectOutputStream output = new ObjectOutputStream(stream)) {
+                    output.writeObject(item);
+                }
+                serialData.add(stream.toByteArray());
+            }
+            serialEncodes[i] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int j = 0; j < mCount; j++) {
+                try (ObjectInputStream input = new ObjectInputStream(
+                        new ByteArrayInputStream(serialData.get(j)))) {
+                    assertEquals(mItems.get(j), input.readObject());
+                }
+            }
+            serialDecodes[i] = System.nanoTime() - start;
+
+            codecBytes = size(codecData);
+            serialBytes = size(serialData);
+        }
+        report("codec", median(codecEncodes), median(codecDecodes), codecBytes);
+        report("serializable", median(serialEncodes), median(serialDecodes), serialBytes);
+    }
+
+    @Test
+    public void clipboardRoundTrip() {
+        // Only the focused app may read the clipboard
+        try (ActivityScenario<MainActivity> ignored = ActivityScenario.launch(MainActivity.class)) {
+            final String mimeType = SuperClipboard.getMime("vnd.projectx.bean");
+            final Bean[] array = mItems.toArray(new Bean[0]);
+            final long[] codecCopies = new long[ROUNDS];
+            final long[] codecPastes = new long[ROUNDS];
+            final long[] serialCopies = new long[ROUNDS];
+            final long[] serialPastes = new long[ROUNDS];
+            for (int i = 0; i < ROUNDS; i++) {
+                long start = System.nanoTime();
+                assertTrue(SuperClipboard.setPrimaryClip(mContext, mimeType, CODEC, mItems));
+                long middle = System.nanoTime();
+                final List<Bean> decoded = new ArrayList<>(mCount);
+                assertTrue(SuperClipboard.getPrimaryClip(mContext, CODEC, decoded));
+                codecPastes[i] = System.nanoTime() - middle;
+                codecCopies[i] = middle - start;
+                assertEquals(mItems, decoded);
+
+                start = System.nanoTime();
+                assertTrue(SuperClipboard.setPrimaryClip(mContext, mimeType, (Serializable[]) array));
+                middle = System.nanoTime();
+                final List<Bean> read = SuperClipboard.getPrimaryClipSerializables(mContext);
+                serialPastes[i] = System.nanoTime() - middle;
+                serialCopies[i] = middle - start;
+                assertEquals(mItems, read);
+            }
+            Log.i(TAG, String.format(Locale.US, "clipboard codec, %d objects: copy %.3f ms, " +
+                    "paste %.3f ms", mCount, median(codecCopies) / 1e6, median(codecPastes) / 1e6));
+            Log.i(TAG, String.format(Locale.US, "clipboard serializable, %d objects: " +
+                            "copy %.3f ms, paste %.3f ms", mCount, median(serialCopies) / 1e6,
+                    median(serialPastes) / 1e6));
+            SuperClipboard.clearPrimaryClip(mContext);
+        }
+    }
+
+    private void report(String name, long encode, long decode, long bytes) {
+        Log.i(TAG, String.format(Locale.US, "%s, %d objects: encode %.3f ms, decode %.3f ms, " +
+                "%.1f bytes per object", name, mCount, encode / 1e6, decode / 1e6,
+                (double) bytes / mCount));
+    }
+
+    private static long size(List<byte[]> data) {
+        long size = 0;
+        for (byte[] item : data) {
+            size += item.length;
+        }
+        return size;
+    }
+
+    private static long median(long[] times) {
+        Arrays.sort(times);
+        return times[times.length / 2];
+    }
+
+    private static class Bean implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final byte mByte;
+        private final short mShort;
+        private final int mInt;
+        private final long mLong;
+        private final float mFloat;
+        private final double mDouble;
+        private final boolean mBoolean;
+        private final char mChar;
+        private final String mString;
+
+        private Bean(byte mByte, short mShort, int mInt, long mLong, float mFloat,
+                     double mDouble, boolean mBoolean, char mChar, String mString) {
+            this.mByte = mByte;
+            this.mShort = mShort;
+            this.mInt = mInt;
+            this.mLong = mLong;
+            this.mFloat = mFloat;
+            this.mDouble = mDouble;
+            this.mBoolean = mBoolean;
+            this.mChar = mChar;
+            this.mString = mString;
+        }
+
+        static Bean test(Random random) {
+            final int v = random.nextInt(250) + 1;
+            return new Bean((byte) (127 - v), (short) (32767 - v), Integer.MAX_VALUE / v,
+                    Long.MAX_VALUE / v, Float.MAX_VALUE / v,
+                    Double.MAX_VALUE / v, true, Character.MAX_VALUE,
+                    "Test:" + v);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Bean)) return false;
+            final Bean bean = (Bean) o;
+            return mByte == bean.mByte && mShort == bean.mShort && mInt == bean.mInt &&
+                    mLong == bean.mLong && Float.compare(bean.mFloat, mFloat) == 0 &&
+                    Double.compare(bean.mDouble, mDouble) == 0 &&
+                    mBoolean == bean.mBoolean && mChar == bean.mChar &&
+                    mString.equals(bean.mString);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[]{mByte, mShort, mInt, mLong, mFloat, mDouble,
+                    mBoolean, mChar, mString});
+        }
+    }
+}
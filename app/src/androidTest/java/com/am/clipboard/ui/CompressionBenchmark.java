@@ -0,0 +1,131 @@
+package com.am.clipboard.ui;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.am.clipboard.SuperClipboard;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compression crossover, run on a device:
+ * ./gradlew :app:connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=com.am.clipboard.ui.CompressionBenchmark
+ * Times a copy and paste of a JSON payload stored raw and with DEFLATE at levels 1 and 6.
+ * Results are logged under the CompressionBenchmark tag. The crossover is the smallest size
+ * where a compressed round trip beats the raw one.
+ */
+@RunWith(Parameterized.class)
+public class CompressionBenchmark {
+
+    private static final String TAG = "CompressionBenchmark";
+    private static final int[] LEVELS = {1, 6};
+    private final int mSize;
+    private final int mRounds;
+    private Context mContext;
+    private byte[] mPayload;
+
+    public CompressionBenchmark(int size, int rounds) {
+        mSize = size;
+        mRounds = rounds;
+    }
+
+    @Parameterized.Parameters(name = "size={0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{
+                {4 * 1024, 50},
+                {64 * 1024, 30},
+                {1024 * 1024, 10},
+                {16 * 1024 * 1024, 5},
+                {64 * 1024 * 1024, 3}
+        });
+    }
+
+    private static byte[] newPayload(int size) {
+        final StringBuilder builder = new StringBuilder(size + 128);
+        final Random random = new Random(0);
+        builder.append('[');
+        while (builder.length() < size) {
+            builder.append("{\"id\":").append(random.nextInt(1000000))
+                    .append(",\"name\":\"item").append(random.nextInt(1000))
+                    .append("\",\"price\":").append(random.nextInt(10000) / 100.0)
+                    .append(",\"tags\":[\"clipboard\",\"benchmark\"]},");
+        }
+        builder.setLength(size - 1);
+        builder.append(']');
+        return builder.toString().getBytes(Charset.forName("UTF-8"));
+    }
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mPayload = newPayload(mSize);
+    }
+
+    @After
+    public void tearDown() {
+        SuperClipboard.disableCompression();
+    }
+
+    @Test
+    public void crossover() {
+        // Only the focused app may read the clipboard
+        try (ActivityScenario<MainActivity> ignored = ActivityScenario.launch(MainActivity.class)) {
+            SuperClipboard.disableCompression();
+            final long raw = measure("raw");
+            for (int level : LEVELS) {
+                SuperClipboard.setCompression(level, 0);
+                final long compressed = measure("deflate " + level);
+                Log.i(TAG, String.format(Locale.US, "%d bytes, deflate %d: %s (%.2fx)",
+                        mSize, level, compressed < raw ? "compression wins" : "raw wins",
+                        (double) raw / Math.max(1, compressed)));
+            }
+            SuperClipboard.clearPrimaryClip(mContext);
+        }
+    }
+
+    private long measure(String name) {
+        final String mimeType = SuperClipboard.getMime("vnd.projectx.json");
+        final long[] copies = new long[mRounds];
+        final long[] pastes = new long[mRounds];
+        final long[] totals = new long[mRounds];
+        for (int i = 0; i < mRounds; i++) {
+            final long start = System.nanoTime();
+            assertTrue(SuperClipboard.setPrimaryClipBytes(mContext, mimeType, mPayload));
+            final long middle = System.nanoTime();
+            final List<byte[]> items = SuperClipboard.getPrimaryClipBytes(mContext, 0);
+            final long end = System.nanoTime();
+            assertNotNull(items);
+            assertArrayEquals(mPayload, items.get(0));
+            copies[i] = middle - start;
+            pastes[i] = end - middle;
+            totals[i] = end - start;
+        }
+        final long copy = median(copies);
+        final long paste = median(pastes);
+        final long total = median(totals);
+        Log.i(TAG, String.format(Locale.US, "%s, %d bytes: copy %.3f ms, paste %.3f ms, " +
+                "total %.3f ms", name, mSize, copy / 1e6, paste / 1e6, total / 1e6));
+        return total;
+    }
+
+    private static long median(long[] times) {
+        Arrays.sort(times);
+        return times[times.length / 2];
+    }
+}
@@ -0,0 +1,96 @@
+package com.am.clipboard.ui;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.am.clipboard.SuperClipboard;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Commit latency of each durability mode, run on a device:
+ * ./gradlew :app:connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=com.am.clipboard.ui.DurabilityBenchmark
+ * Times setting a clip of several items under DURABILITY_NONE, DURABILITY_ITEM and
+ * DURABILITY_CLIP. Results are logged under the DurabilityBenchmark tag.
+ */
+@RunWith(Parameterized.class)
+public class DurabilityBenchmark {
+
+    private static final String TAG = "DurabilityBenchmark";
+    private static final int ROUNDS = 20;
+    private static final int[] MODES = {SuperClipboard.DURABILITY_NONE,
+            SuperClipboard.DURABILITY_ITEM, SuperClipboard.DURABILITY_CLIP};
+    private static final String[] NAMES = {"none", "item", "clip"};
+    private final int mCount;
+    private final int mSize;
+    private Context mContext;
+    private byte[][] mItems;
+
+    public DurabilityBenchmark(int count, int size) {
+        mCount = count;
+        mSize = size;
+    }
+
+    @Parameterized.Parameters(name = "count={0}, size={1}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{
+                {1, 4 * 1024},
+                {16, 4 * 1024},
+                {1, 1024 * 1024},
+                {16, 1024 * 1024}
+        });
+    }
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        final Random random = new Random(0);
+        mItems = new byte[mCount][mSize];
+        for (byte[] item : mItems) {
+            random.nextBytes(item);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        SuperClipboard.setDurability(SuperClipboard.DURABILITY_NONE);
+    }
+
+    @Test
+    public void commitLatency() {
+        // Only the focused app may read the clipboard
+        try (ActivityScenario<MainActivity> ignored = ActivityScenario.launch(MainActivity.class)) {
+            final String mimeType = SuperClipboard.getMime("vnd.projectx.durability");
+            for (int m = 0; m < MODES.length; m++) {
+                SuperClipboard.setDurability(MODES[m]);
+                // The provider takes the mode with the first clip after the change
+                assertTrue(SuperClipboard.setPrimaryClipBytes(mContext, mimeType, mItems));
+                final long[] times = new long[ROUNDS];
+                for (int i = 0; i < ROUNDS; i++) {
+                    final long start = System.nanoTime();
+                    assertTrue(SuperClipboard.setPrimaryClipBytes(mContext, mimeType, mItems));
+                    times[i] = System.nanoTime() - start;
+                }
+                Arrays.sort(times);
+                Log.i(TAG, String.format(Locale.US, "%s, %d x %d bytes: median %.3f ms, " +
+                                "max %.3f ms", NAMES[m], mCount, mSize,
+                        times[ROUNDS / 2] / 1e6, times[ROUNDS - 1] / 1e6));
+            }
+            SuperClipboard.clearPrimaryClip(mContext);
+        }
+    }
+}
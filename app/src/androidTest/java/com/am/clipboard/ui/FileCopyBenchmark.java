@@ -0,0 +1,131 @@
+package com.am.clipboard.ui;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.am.clipboard.SuperClipboard;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * File copy throughput at 1 KB, 1 MB and 500 MB, run on a device:
+ * ./gradlew :app:connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=com.am.clipboard.ui.FileCopyBenchmark
+ * Results are logged under the FileCopyBenchmark tag. The reference is the copy loop used
+ * before channel transfers: a 1 KiB array with a flush after every chunk.
+ */
+@RunWith(Parameterized.class)
+public class FileCopyBenchmark {
+
+    private static final String TAG = "FileCopyBenchmark";
+    private final int mSize;
+    private final int mRounds;
+    private Context mContext;
+    private File mSource;
+    private File mTarget;
+
+    public FileCopyBenchmark(int size, int rounds) {
+        mSize = size;
+        mRounds = rounds;
+    }
+
+    @Parameterized.Parameters(name = "size={0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{
+                {1024, 200},
+                {1024 * 1024, 20},
+                {500 * 1024 * 1024, 3}
+        });
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mSource = new File(mContext.getCacheDir(), "benchmark_source");
+        mTarget = new File(mContext.getCacheDir(), "benchmark_target");
+        final byte[] buffer = new byte[Math.min(mSize, 1024 * 1024)];
+        final Random random = new Random(0);
+        try (OutputStream output = new FileOutputStream(mSource)) {
+            for (int i = 0; i < mSize / buffer.length; i++) {
+                random.nextBytes(buffer);
+                output.write(buffer);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        mSource.delete();
+        //noinspection ResultOfMethodCallIgnored
+        mTarget.delete();
+    }
+
+    @Test
+    public void streamCopy() throws IOException {
+        final long[] times = new long[mRounds];
+        for (int i = 0; i < mRounds; i++) {
+            final long start = System.nanoTime();
+            try (InputStream input = new FileInputStream(mSource);
+                 OutputStream output = new FileOutputStream(mTarget)) {
+                final byte[] buffer = new byte[1024];
+                int count;
+                while ((count = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, count);
+                    output.flush();
+                }
+            }
+            times[i] = System.nanoTime() - start;
+            assertEquals(mSize, mTarget.length());
+        }
+        report("stream copy", times);
+    }
+
+    @Test
+    public void clipboardCopy() {
+        // Only the focused app may read the clipboard
+        try (ActivityScenario<MainActivity> ignored = ActivityScenario.launch(MainActivity.class)) {
+            final String mimeType = SuperClipboard.getMime("vnd.projectx.benchmark");
+            final long[] copies = new long[mRounds];
+            final long[] pastes = new long[mRounds];
+            for (int i = 0; i < mRounds; i++) {
+                final long start = System.nanoTime();
+                assertTrue(SuperClipboard.setPrimaryClip(mContext, mimeType, mSource));
+                final long middle = System.nanoTime();
+                assertTrue(SuperClipboard.getPrimaryClipFile(mContext, mTarget));
+                pastes[i] = System.nanoTime() - middle;
+                copies[i] = middle - start;
+                assertEquals(mSize, mTarget.length());
+            }
+            report("clipboard copy", copies);
+            report("clipboard paste", pastes);
+            SuperClipboard.clearPrimaryClip(mContext);
+        }
+    }
+
+    private void report(String name, long[] times) {
+        Arrays.sort(times);
+        final long median = Math.max(1, times[times.length / 2]);
+        Log.i(TAG, String.format(Locale.US, "%s, %d bytes: %.3f ms, %.1f MB/s",
+                name, mSize, median / 1e6, mSize * 1e3 / median));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2021 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.am.clipboard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 缓冲区辅助
+ * 每个线程缓存一个缓冲区，复制数据及缓冲流均复用该缓冲区，稳定状态下读写不再逐项分配内存。
+ * 同一线程嵌套使用时，后取得的缓冲区为新分配，归还时丢弃。
+ */
+class BufferHelper {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] EMPTY = new byte[0];
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<>();
+
+    private BufferHelper() {
+        //no instance
+    }
+
+    /**
+     * 取得缓冲区，使用完毕后需归还
+     *
+     * @return 缓冲区，大小为{@link #BUFFER_SIZE}
+     */
+    static byte[] obtain() {
+        final byte[] buffer = BUFFERS.get();
+        if (buffer == null) {
+            return new byte[BUFFER_SIZE];
+        }
+        BUFFERS.set(null);
+        return buffer;
+    }
+
+    /**
+     * 归还缓冲区，归还后不可再使用
+     *
+     * @param buffer 缓冲区
+     */
+    static void recycle(byte[] buffer) {
+        if (buffer != null && buffer.length == BUFFER_SIZE && BUFFERS.get() == null) {
+            BUFFERS.set(buffer);
+        }
+    }
+
+    /**
+     * 包装为缓冲输入流，关闭时归还缓冲区
+     *
+     * @param input 输入流
+     * @return 缓冲输入流
+     */
+    static InputStream buffer(InputStream input) {
+        return new PooledInputStream(input);
+    }
+
+    /**
+     * 包装为缓冲输出流，关闭时归还缓冲区
+     *
+     * @param output 输出流
+     * @return 缓冲输出流
+     */
+    static OutputStream buffer(OutputStream output) {
+        return new PooledOutputStream(output);
+    }
+
+    private static final class PooledInputStream extends BufferedInputStream {
+
+        PooledInputStream(InputStream input) {
+            super(input, 1);
+            buf = obtain();
+        }
+
+        @Override
+        public void close() throws IOException {
+            final byte[] buffer = buf;
+            try {
+                super.close();
+            } finally {
+                recycle(buffer);
+            }
+        }
+    }
+
+    private static final class PooledOutputStream extends BufferedOutputStream {
+
+        PooledOutputStream(OutputStream output) {
+            super(output, 1);
+            buf = obtain();
+        }
+
+        @Override
+        public void close() throws IOException {
+            final byte[] buffer = buf;
+            if (buffer == EMPTY) {
+                return;
+            }
+            try {
+                super.close();
+            } finally {
+                // 关闭后再写入将抛出异常，而不是写入已归还的缓冲区
+                buf = EMPTY;
+                count = 0;
+                recycle(buffer);
+            }
+        }
+    }
+}
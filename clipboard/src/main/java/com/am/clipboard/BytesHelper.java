@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2021 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.am.clipboard;
+
+import android.os.ParcelFileDescriptor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * 内存数据辅助
+ * 字节数组及缓冲区直接写入文件描述符，读取时按文件大小一次分配，不经过临时文件
+ */
+class BytesHelper {
+
+    private BytesHelper() {
+        //no instance
+    }
+
+    /**
+     * 聚集写入
+     * 写入缓冲区的副本，不改变缓冲区的位置，可重复写入
+     *
+     * @param buffers    缓冲区，按顺序写入各缓冲区的剩余数据
+     * @param descriptor 文件，写入完成后关闭
+     * @return 写入成功时返回true
+     */
+    static boolean write(ByteBuffer[] buffers, ParcelFileDescriptor descriptor) {
+        final ByteBuffer[] sources = new ByteBuffer[buffers.length];
+        long remaining = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            sources[i] = buffers[i].duplicate();
+            remaining += sources[i].remaining();
+        }
+        try (final FileOutputStream output =
+                     new ParcelFileDescriptor.AutoCloseOutputStream(descriptor)) {
+            final FileChannel channel = output.getChannel();
+            while (remaining > 0) {
+                remaining -= channel.write(sources);
+            }
+            return true;
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    /**
+     * 获取缓冲区的剩余数据总大小
+     *
+     * @param buffers 缓冲区
+     * @return 总大小
+     */
+    static long getLength(ByteBuffer[] buffers) {
+        long length = 0;
+        for (ByteBuffer buffer : buffers) {
+            length += buffer.remaining();
+        }
+        return length;
+    }
+
+    /**
+     * 读取到缓冲区
+     * 普通文件按文件大小一次分配，管道等未知大小的文件描述符使用缓冲区复制
+     *
+     * @param descriptor 文件，读取完成后关闭
+     * @param direct     是否分配直接缓冲区
+     * @return 缓冲区，位置为0，上限为数据大小；非直接缓冲区的底层数组即为完整数据
+     * @throws IOException 读取失败
+     */
+    static ByteBuffer read(ParcelFileDescriptor descriptor, boolean direct) throws IOException {
+        try (final FileInputStream input =
+                     new ParcelFileDescriptor.AutoCloseInputStream(descriptor)) {
+            final long size = descriptor.getStatSize();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + size);
+            }
+            if (size < 0) {
+                final ByteArrayOutputStream output = new ByteArrayOutputStream();
+                FileHelper.copy(input, output);
+                final byte[] data = output.toByteArray();
+                if (!direct) {
+                    return ByteBuffer.wrap(data);
+                }
+                final ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+                buffer.put(data);
+                buffer.flip();
+                return buffer;
+            }
+            final ByteBuffer buffer = direct ?
+                    ByteBuffer.allocateDirect((int) size) : ByteBuffer.allocate((int) size);
+            final FileChannel channel = input.getChannel();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) == -1) {
+                    throw new IOException("Unexpected end of file");
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    public static class ByteArrayOutputAdapter implements SuperClipboard.SizedOutputAdapter,
+            InlineHelper.InlineOutputAdapter {
+
+        private final String mMimeType;
+        private final String[] mMimeTypes;
+        private final byte[][] mItems;
+
+        public ByteArrayOutputAdapter(String mimeType, byte[]... items) {
+            mMimeType = mimeType;
+            mMimeTypes = null;
+            mItems = items;
+        }
+
+        public ByteArrayOutputAdapter(String[] mimeTypes, byte[][] items) {
+            mMimeType = null;
+            mMimeTypes = mimeTypes;
+            mItems = items;
+        }
+
+        @Override
+        public int getCount() {
+            return mItems.length;
+        }
+
+        @Override
+        public String getMimeType(int position) {
+            //noinspection ConstantConditions
+            return mMimeType != null ? mMimeType : mMimeTypes[position];
+        }
+
+        @Override
+        public long getLength(int position) {
+            return mItems[position].length;
+        }
+
+        @Override
+        public boolean write(int position, ParcelFileDescriptor descriptor) {
+            try (final FileOutputStream output =
+                         new ParcelFileDescriptor.AutoCloseOutputStream(descriptor)) {
+                output.write(mItems[position]);
+                return true;
+            } catch (Throwable t) {
+                return false;
+            }
+        }
+
+        @Override
+        public byte[] toByteArray(int position, int limit) {
+            final byte[] data = mItems[position];
+            return data.length <= limit ? data : null;
+        }
+    }
+
+    public static class ByteBufferOutputAdapter implements SuperClipboard.SizedOutputAdapter,
+            InlineHelper.InlineOutputAdapter {
+
+        private final String mMimeType;
+        private final String[] mMimeTypes;
+        private final ByteBuffer[][] mItems;
+
+        public ByteBufferOutputAdapter(String mimeType, ByteBuffer... items) {
+            mMimeType = mimeType;
+            mMimeTypes = null;
+            mItems = new ByteBuffer[items.length][];
+            for (int i = 0; i < items.length; i++) {
+                mItems[i] = new ByteBuffer[]{items[i]};
+            }
+        }
+
+        public ByteBufferOutputAdapter(String[] mimeTypes, ByteBuffer[][] items) {
+            mMimeType = null;
+            mMimeTypes = mimeTypes;
+            mItems = items;
+        }
+
+        @Override
+        public int getCount() {
+            return mItems.length;
+        }
+
+        @Override
+        public String getMimeType(int position) {
+            //noinspection ConstantConditions
+            return mMimeType != null ? mMimeType : mMimeTypes[position];
+        }
+
+        @Override
+        public long getLength(int position) {
+            return BytesHelper.getLength(mItems[position]);
+        }
+
+        @Override
+        public boolean write(int position, ParcelFileDescriptor descriptor) {
+            return BytesHelper.write(mItems[position], descriptor);
+        }
+
+        @Override
+        public byte[] toByteArray(int position, int limit) {
+            final ByteBuffer[] buffers = mItems[position];
+            final long length = BytesHelper.getLength(buffers);
+            if (length > limit) {
+                return null;
+            }
+            final byte[] data = new byte[(int) length];
+            int offset = 0;
+            for (ByteBuffer buffer : buffers) {
+                final int count = buffer.remaining();
+                buffer.duplicate().get(data, offset, count);
+                offset += count;
+            }
+            return data;
+        }
+    }
+
+    public static class ByteArrayInputAdapter implements SuperClipboard.ParallelInputAdapter {
+
+        private final ArrayList<byte[]> mItems = new ArrayList<>();
+
+        @Override
+        public boolean read(String mimeType, ParcelFileDescriptor descriptor) {
+            try {
+                final byte[] item = BytesHelper.read(descriptor, false).array();
+                synchronized (mItems) {
+                    mItems.add(item);
+                }
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void onStart(int count) {
+            synchronized (mItems) {
+                mItems.clear();
+                mItems.addAll(Collections.nCopies(count, null));
+            }
+        }
+
+        @Override
+        public boolean read(int position, String mimeType, ParcelFileDescriptor descriptor) {
+            try {
+                final byte[] item = BytesHelper.read(descriptor, false).array();
+                synchronized (mItems) {
+                    mItems.set(position, item);
+                }
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        public ArrayList<byte[]> getItems() {
+            synchronized (mItems) {
+                return new ArrayList<>(mItems);
+            }
+        }
+    }
+
+    public static class ByteBufferInputAdapter implements SuperClipboard.ParallelInputAdapter {
+
+        private final boolean mDirect;
+        private final ArrayList<ByteBuffer> mItems = new ArrayList<>();
+
+        /**
+         * 构造
+         *
+         * @param direct 是否分配直接缓冲区
+         */
+        public ByteBufferInputAdapter(boolean direct) {
+            mDirect = direct;
+        }
+
+        @Override
+        public boolean read(String mimeType, ParcelFileDescriptor descriptor) {
+            try {
+                final ByteBuffer item = BytesHelper.read(descriptor, mDirect);
+                synchronized (mItems) {
+                    mItems.add(item);
+                }
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void onStart(int count) {
+            synchronized (mItems) {
+                mItems.clear();
+                mItems.addAll(Collections.nCopies(count, null));
+            }
+        }
+
+        @Override
+        public boolean read(int position, String mimeType, ParcelFileDescriptor descriptor) {
+            try {
+                final ByteBuffer item = BytesHelper.read(descriptor, mDirect);
+                synchronized (mItems) {
+                    mItems.set(position, item);
+                }
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        public ArrayList<ByteBuffer> getItems() {
+            synchronized (mItems) {
+                return new ArrayList<>(mItems);
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2021 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.am.clipboard;
+
+import android.net.Uri;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+/**
+ * 进程内缓存辅助
+ * 以子项Uri为键缓存同一进程写入的子项，同一进程粘贴时无需经过内容提供者及文件。
+ * 不可变对象直接缓存实例，其他对象缓存写入时的编码数据，读取时据此生成副本。
+ * 缓存为软引用，剪切板变更时移除。
+ */
+class CacheHelper {
+
+    private static final int MAX_SIZE = 1024 * 1024;// 编码数据的最大缓存大小
+    private static final HashMap<Uri, SoftReference<Object>> CACHE = new HashMap<>();
+
+    private CacheHelper() {
+        //no instance
+    }
+
+    /**
+     * 判断是否为不可变对象
+     *
+     * @param value 对象
+     * @return 不可变时返回true
+     */
+    static boolean isImmutable(Object value) {
+        return value instanceof String || value instanceof Integer || value instanceof Long ||
+                value instanceof Boolean || value instanceof Double || value instanceof Float ||
+                value instanceof Short || value instanceof Byte || value instanceof Character ||
+                value instanceof Enum;
+    }
+
+    /**
+     * 缓存子项
+     *
+     * @param uri   子项
+     * @param value 不可变对象或编码数据，为空时不缓存
+     */
+    static void put(Uri uri, Object value) {
+        if (value == null) {
+            return;
+        }
+        synchronized (CACHE) {
+            CACHE.put(uri, new SoftReference<>(value));
+        }
+    }
+
+    /**
+     * 获取缓存
+     *
+     * @param uri 子项
+     * @return 不可变对象或编码数据，未缓存或已回收时返回null
+     */
+    static Object get(Uri uri) {
+        synchronized (CACHE) {
+            final SoftReference<Object> reference = CACHE.get(uri);
+            if (reference == null) {
+                return null;
+            }
+            final Object value = reference.get();
+            if (value == null) {
+                CACHE.remove(uri);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * 移除缓存
+     *
+     * @param uris 子项
+     */
+    static void remove(Collection<Uri> uris) {
+        synchronized (CACHE) {
+            for (Uri uri : uris) {
+                CACHE.remove(uri);
+            }
+        }
+    }
+
+    /**
+     * 仅保留指定子项的缓存
+     *
+     * @param uris 保留的子项
+     */
+    static void retain(Collection<Uri> uris) {
+        final HashSet<Uri> retained = new HashSet<>(uris);
+        synchronized (CACHE) {
+            final Iterator<Uri> iterator = CACHE.keySet().iterator();
+            while (iterator.hasNext()) {
+                if (!retained.contains(iterator.next())) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    /**
+     * 可缓存的输出内容提供者
+     */
+    interface CacheableOutputAdapter {
+
+        /**
+         * 获取写入后的缓存
+         *
+         * @param position 位置
+         * @return 不可变对象或编码数据，无法缓存时返回null
+         */
+        Object getCache(int position);
+    }
+
+    /**
+     * 可读取缓存的输入内容提供者
+     */
+    interface CacheableInputAdapter {
+
+        /**
+         * 读取缓存
+         *
+         * @param position 位置
+         * @param mimeType MIME类型
+         * @param value    不可变对象或编码数据
+         * @return 读取成功时返回true，失败时将改为读取文件
+         */
+        boolean readCache(int position, String mimeType, Object value);
+    }
+
+    /**
+     * 捕获输出流
+     * 写入的同时保留一份数据，超出最大缓存大小后放弃
+     */
+    static final class CaptureOutputStream extends FilterOutputStream {
+
+        private ByteArrayOutputStream mCapture = new ByteArrayOutputStream();
+
+        CaptureOutputStream(OutputStream output) {
+            super(output);
+        }
+
+        private void capture(int length) {
+            if (mCapture != null && mCapture.size() + length > MAX_SIZE) {
+                mCapture = null;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            capture(1);
+            if (mCapture != null) {
+                mCapture.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            capture(len);
+            if (mCapture != null) {
+                mCapture.write(b, off, len);
+            }
+        }
+
+        /**
+         * 获取已写入的数据
+         *
+         * @return 数据，超出最大缓存大小时返回null
+         */
+        byte[] toByteArray() {
+            return mCapture == null ? null : mCapture.toByteArray();
+        }
+    }
+}
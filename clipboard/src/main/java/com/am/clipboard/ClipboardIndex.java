@@ -0,0 +1,1059 @@
+/*
+ * Copyright (C) 2021 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.am.clipboard;
+
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 剪切板子项索引
+ * 首次使用时重放日志建立，之后随写入、删除及清空同步更新并追加日志，避免逐项访问文件系统
+ * 同时增量统计存储用量，超出配额时淘汰最久未访问的旧子项
+ * 子项先写入暂存文件，提交时重命名发布，按持久化模式同步磁盘
+ * 按代数保留最近的剪切板历史，历史剪切板的子项晚于其他子项删除，超出历史容量时逐个淘汰最旧的剪切板
+ * 子项及数据块按文件名前缀分片存放于子文件夹，单个文件夹的文件数有限；清空时整体移走文件夹后在后台删除
+ */
+class ClipboardIndex {
+
+    private static final String DIRECTORY_ITEM = "items";
+    private static final String DIRECTORY_BLOB = "blobs";
+    private static final String PREFIX_TRASH = "trash-";
+    private static final int SHARD_LENGTH = 2;// 分片前缀长度，名称及摘要均为十六进制，最多256个分片
+    private static final char SEPARATOR_DIGEST = '@';
+    private static final int COMPACT_THRESHOLD = 256;// 日志压缩的最少记录条数
+    private final File mDirectory;
+    private final File mItemDirectory;
+    private final File mBlobDirectory;
+    private final ClipboardJournal mJournal;
+    private final ClipboardSettings mSettings;
+    private final HashMap<String, Integer> mReferences = new HashMap<>();
+    private final HashSet<String> mLive = new HashSet<>();// 当前剪切板的子项
+    // 剪切板历史，以代数为键按时间先后排列，非空的当前剪切板为最后一项
+    private final LinkedHashMap<Long, String[]> mHistory = new LinkedHashMap<>();
+    private long mGeneration;// 当前剪切板代数
+    private long mBytes;// 已提交子项占用的存储大小，共享数据块仅计一次
+    private long mReserved;// 写入中子项预留的存储大小
+    private HashMap<String, Item> mItems;
+
+    ClipboardIndex(File directory, ClipboardSettings settings) {
+        mDirectory = directory;
+        mItemDirectory = new File(directory, DIRECTORY_ITEM);
+        mBlobDirectory = new File(directory, DIRECTORY_BLOB);
+        mJournal = new ClipboardJournal(directory);
+        mSettings = settings;
+    }
+
+    private HashMap<String, Item> getItems() {
+        if (mItems == null) {
+            mItems = new HashMap<>();
+            // 旧版本的子项平铺于剪切板文件夹，需迁移至分片
+            final boolean flat = !mItemDirectory.isDirectory();
+            //noinspection ResultOfMethodCallIgnored
+            mItemDirectory.mkdirs();
+            final List<String[]> records = mJournal.exists() ? mJournal.read() : null;
+            if (records == null) {
+                // 无日志，如旧版本升级，扫描一次目录后写入日志
+                scan();
+                compact();
+            } else if (replay(records, flat) || mJournal.getCount() >= COMPACT_THRESHOLD) {
+                compact();
+            }
+            recount();
+            cleanup(flat);
+        }
+        return mItems;
+    }
+
+    private void recount() {
+        mBytes = 0;
+        mReserved = 0;
+        final HashSet<String> digests = new HashSet<>();
+        for (Item item : mItems.values()) {
+            if (item.size != Item.SIZE_UNKNOWN &&
+                    (item.digest == null || digests.add(item.digest))) {
+                mBytes += item.size;
+            }
+        }
+    }
+
+    private static File getShardFile(File directory, String filename) {
+        final String shard = filename.length() > SHARD_LENGTH ?
+                filename.substring(0, SHARD_LENGTH) : filename;
+        return new File(new File(directory, shard), filename);
+    }
+
+    private File getItemFile(String filename) {
+        return getShardFile(mItemDirectory, filename);
+    }
+
+    private File getBlobFile(String digest) {
+        return getShardFile(mBlobDirectory, digest);
+    }
+
+    private static List<File> listShardFiles(File directory) {
+        final ArrayList<File> files = new ArrayList<>();
+        final File[] shards = directory.listFiles();
+        if (shards == null) {
+            return files;
+        }
+        for (File shard : shards) {
+            final File[] children = shard.isDirectory() ? shard.listFiles() : null;
+            if (children != null) {
+                files.addAll(Arrays.asList(children));
+            }
+        }
+        return files;
+    }
+
+    private static void move(File source, File target) {
+        if (source.isFile() && !target.exists()) {
+            //noinspection ResultOfMethodCallIgnored
+            target.getParentFile().mkdirs();
+            //noinspection ResultOfMethodCallIgnored
+            source.renameTo(target);
+        }
+    }
+
+    /**
+     * 迁移旧版本平铺的子项文件至分片
+     */
+    private void migrate(Item item) {
+        if (item.digest == null) {
+            move(new File(mDirectory, item.getFilename()), getItemFile(item.getFilename()));
+            return;
+        }
+        final String marker = item.getFilename() + SEPARATOR_DIGEST + item.digest;
+        move(new File(mDirectory, marker), getItemFile(marker));
+        move(new File(mBlobDirectory, item.digest), getBlobFile(item.digest));
+    }
+
+    private void scan() {
+        final ArrayList<File> files = new ArrayList<>();
+        final File[] children = mDirectory.listFiles();
+        if (children != null) {
+            // 旧版本平铺的子项
+            for (File child : children) {
+                if (child.isFile() && !ClipboardJournal.isJournal(child.getName())) {
+                    files.add(child);
+                }
+            }
+        }
+        files.addAll(listShardFiles(mItemDirectory));
+        for (File child : files) {
+            final String filename = child.getName();
+            if (filename.endsWith(Item.SUFFIX_STAGING)) {
+                // 未提交的暂存文件
+                FileHelper.delete(child);
+                continue;
+            }
+            final long modified = child.lastModified();
+            move(child, getItemFile(filename));
+            final int index = filename.indexOf(SEPARATOR_DIGEST);
+            final Item item;
+            if (index < 0) {
+                item = Item.parse(filename, getItemFile(filename).length(), modified);
+            } else {
+                // 去重子项，文件仅为指向共享数据块的标记
+                final String digest = filename.substring(index + 1);
+                final File blob = getBlobFile(digest);
+                move(new File(mBlobDirectory, digest), blob);
+                item = Item.parse(filename.substring(0, index), blob.length(), modified);
+                item.digest = digest;
+                retain(digest);
+            }
+            mItems.put(item.name, item);
+            // 无法得知当前剪切板，暂且全部保留，由检查剪切板时回收
+            mLive.add(item.name);
+        }
+    }
+
+    /**
+     * 后台删除清空时移走的文件夹，升级时一并删除未能迁移的平铺文件
+     */
+    private void cleanup(boolean flat) {
+        final File[] children = mDirectory.listFiles();
+        if (children == null) {
+            return;
+        }
+        final ArrayList<File> garbage = new ArrayList<>();
+        for (File child : children) {
+            final String filename = child.getName();
+            if (child.isDirectory() ? filename.startsWith(PREFIX_TRASH) :
+                    flat && !ClipboardJournal.isJournal(filename)) {
+                garbage.add(child);
+            }
+        }
+        if (flat) {
+            final File[] blobs = mBlobDirectory.listFiles();
+            if (blobs != null) {
+                for (File blob : blobs) {
+                    if (blob.isFile()) {
+                        garbage.add(blob);
+                    }
+                }
+            }
+        }
+        delete(garbage);
+    }
+
+    private static void delete(List<File> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        try {
+            ExecutorHelper.getHousekeepingExecutor().execute(() -> {
+                for (File file : files) {
+                    FileHelper.delete(file);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            for (File file : files) {
+                FileHelper.delete(file);
+            }
+        }
+    }
+
+    /**
+     * 移走文件夹，由后台删除，无法移走时直接删除
+     */
+    private void trash(File directory, List<File> garbage) {
+        if (!directory.exists()) {
+            return;
+        }
+        final File trash = new File(mDirectory, PREFIX_TRASH + UUID.randomUUID());
+        if (directory.renameTo(trash)) {
+            garbage.add(trash);
+        } else {
+            FileHelper.delete(directory);
+        }
+    }
+
+    /**
+     * 重放日志，删除写入中途崩溃等原因遗留的子项
+     *
+     * @param records 日志记录
+     * @return 存在遗留子项时返回true
+     */
+    private boolean replay(List<String[]> records, boolean flat) {
+        final HashMap<String, Item> items = new HashMap<>();
+        for (String[] record : records) {
+            try {
+                final String name = record[1];
+                switch (record[0]) {
+                    case ClipboardJournal.RECORD_ADD:
+                        items.put(name, new Item(name,
+                                record[2].isEmpty() ? null : Uri.decode(record[2]),
+                                Item.SIZE_UNKNOWN, Long.parseLong(record[3])));
+                        break;
+                    case ClipboardJournal.RECORD_CODEC: {
+                        final Item item = items.get(name);
+                        if (item != null) {
+                            item.level = Integer.parseInt(record[3]);
+                            item.codec = record[2];
+                        }
+                        break;
+                    }
+                    case ClipboardJournal.RECORD_COMMIT: {
+                        final Item item = items.get(name);
+                        if (item != null) {
+                            item.size = Long.parseLong(record[2]);
+                            item.digest = record[3].isEmpty() ? null : record[3];
+                            if (record.length > 4) {
+                                item.length = Long.parseLong(record[4]);
+                            }
+                        }
+                        break;
+                    }
+                    case ClipboardJournal.RECORD_DELETE:
+                        items.remove(name);
+                        break;
+                    case ClipboardJournal.RECORD_LIVE: {
+                        mGeneration = Long.parseLong(name);
+                        final List<String> names =
+                                Arrays.asList(record).subList(2, record.length);
+                        mLive.clear();
+                        mLive.addAll(names);
+                        if (!names.isEmpty()) {
+                            mHistory.put(mGeneration, names.toArray(new String[0]));
+                        }
+                        break;
+                    }
+                }
+            } catch (RuntimeException e) {
+                // 损坏的记录，忽略
+            }
+        }
+        trimHistory();
+        final HashSet<String> retained = new HashSet<>();
+        for (String[] names : mHistory.values()) {
+            retained.addAll(Arrays.asList(names));
+        }
+        final ArrayList<Item> stale = new ArrayList<>();
+        for (Item item : items.values()) {
+            final boolean committed = item.size != Item.SIZE_UNKNOWN;
+            if (committed && item.digest != null) {
+                retain(item.digest);
+            }
+            if (committed && flat) {
+                migrate(item);
+            }
+            if (committed && retained.contains(item.name) && isIntact(item)) {
+                mItems.put(item.name, item);
+            } else {
+                // 写入中途崩溃，已写入但未能成为当前剪切板，或系统崩溃时数据未能落盘
+                stale.add(item);
+            }
+        }
+        for (Item item : stale) {
+            if (item.size != Item.SIZE_UNKNOWN) {
+                release(item);
+                continue;
+            }
+            discard(item);
+        }
+        mLive.retainAll(mItems.keySet());
+        final Iterator<Map.Entry<Long, String[]>> iterator = mHistory.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Long, String[]> entry = iterator.next();
+            final ArrayList<String> names = new ArrayList<>();
+            for (String name : entry.getValue()) {
+                if (mItems.containsKey(name)) {
+                    names.add(name);
+                }
+            }
+            if (names.isEmpty() || (entry.getKey() != mGeneration &&
+                    names.size() != entry.getValue().length)) {
+                // 部分子项已被淘汰的历史剪切板不再保留
+                iterator.remove();
+            } else {
+                entry.setValue(names.toArray(new String[0]));
+            }
+        }
+        return !stale.isEmpty();
+    }
+
+    /**
+     * 删除写入中途崩溃的子项遗留的文件
+     * 去重提交先创建标记再移动数据块，存在标记时一并删除无引用的数据块
+     */
+    private void discard(Item item) {
+        FileHelper.delete(getItemFile(item.name + Item.SUFFIX_STAGING));
+        if (item.codec != null) {
+            FileHelper.delete(getItemFile(item.getStagingFilename()));
+        }
+        final String prefix = item.getFilename() + SEPARATOR_DIGEST;
+        final File[] children = getItemFile(prefix).getParentFile().listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            final String filename = child.getName();
+            if (!filename.startsWith(prefix)) {
+                continue;
+            }
+            FileHelper.delete(child);
+            final String digest = filename.substring(prefix.length());
+            if (!mReferences.containsKey(digest)) {
+                FileHelper.delete(getBlobFile(digest));
+            }
+        }
+    }
+
+    /**
+     * 判断已提交子项的数据是否完整，仅比较文件大小
+     */
+    private boolean isIntact(Item item) {
+        return getFile(item).length() == item.size;
+    }
+
+    /**
+     * 压缩日志，以当前索引的快照替换全部记录
+     */
+    private void compact() {
+        final ArrayList<String[]> records = new ArrayList<>();
+        for (Item item : mItems.values()) {
+            records.add(new String[]{ClipboardJournal.RECORD_ADD, item.name,
+                    item.mimeType == null ? null : Uri.encode(item.mimeType),
+                    Long.toString(item.created)});
+            if (item.codec != null) {
+                records.add(new String[]{ClipboardJournal.RECORD_CODEC, item.name,
+                        item.codec, Integer.toString(item.level)});
+            }
+            if (item.size != Item.SIZE_UNKNOWN) {
+                records.add(getCommitRecord(item));
+            }
+        }
+        for (Map.Entry<Long, String[]> entry : mHistory.entrySet()) {
+            // 当前剪切板最后写入
+            if (entry.getKey() != mGeneration) {
+                records.add(getLiveRecord(entry.getKey(), Arrays.asList(entry.getValue())));
+            }
+        }
+        records.add(getLiveRecord(mGeneration, mLive));
+        mJournal.rewrite(records,
+                mSettings.getDurability() != SuperClipboard.DURABILITY_NONE);
+    }
+
+    private static String[] getCommitRecord(Item item) {
+        if (item.length == Item.SIZE_UNKNOWN) {
+            return new String[]{ClipboardJournal.RECORD_COMMIT, item.name,
+                    Long.toString(item.size), item.digest};
+        }
+        return new String[]{ClipboardJournal.RECORD_COMMIT, item.name,
+                Long.toString(item.size), item.digest, Long.toString(item.length)};
+    }
+
+    private static String[] getLiveRecord(long generation, Collection<String> names) {
+        final String[] record = new String[names.size() + 2];
+        record[0] = ClipboardJournal.RECORD_LIVE;
+        record[1] = Long.toString(generation);
+        int i = 2;
+        for (String name : names) {
+            record[i++] = name;
+        }
+        return record;
+    }
+
+    /**
+     * 淘汰超出历史容量的最旧剪切板，其子项由调用方删除
+     */
+    private void trimHistory() {
+        final int capacity = mSettings.getHistorySize() + 1;
+        final Iterator<Long> iterator = mHistory.keySet().iterator();
+        while (mHistory.size() > capacity && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private boolean isOverQuota(long bytes, int items) {
+        final long maxBytes = mSettings.getQuotaBytes();
+        final int maxItems = mSettings.getQuotaItems();
+        return (maxBytes > 0 && mBytes + mReserved + bytes > maxBytes) ||
+                (maxItems > 0 && mItems.size() + items > maxItems);
+    }
+
+    /**
+     * 确保配额足够，不足时按最久未访问的顺序淘汰历史剪切板的子项
+     * 写入中的子项及当前剪切板的子项不会被淘汰，新剪切板写入失败时当前剪切板仍然完整；
+     * 包含被淘汰子项的历史剪切板随之移除
+     *
+     * @param bytes 新增的存储大小
+     * @param items 新增的子项个数
+     * @return 配额足够时返回true
+     */
+    private boolean ensureQuota(long bytes, int items) {
+        if (!isOverQuota(bytes, items)) {
+            return true;
+        }
+        final ArrayList<Item> candidates = new ArrayList<>();
+        for (Item item : mItems.values()) {
+            if (item.size != Item.SIZE_UNKNOWN && item.generation < mGeneration &&
+                    !mLive.contains(item.name)) {
+                candidates.add(item);
+            }
+        }
+        Collections.sort(candidates, (a, b) -> Long.compare(a.accessed, b.accessed));
+        final HashSet<String> evicted = new HashSet<>();
+        boolean enough = false;
+        for (Item item : candidates) {
+            mItems.remove(item.name);
+            evicted.add(item.name);
+            log(ClipboardJournal.RECORD_DELETE, item.name);
+            release(item);
+            if (!isOverQuota(bytes, items)) {
+                enough = true;
+                break;
+            }
+        }
+        final Iterator<String[]> iterator = mHistory.values().iterator();
+        while (iterator.hasNext()) {
+            for (String name : iterator.next()) {
+                if (evicted.contains(name)) {
+                    iterator.remove();
+                    break;
+                }
+            }
+        }
+        return enough;
+    }
+
+    private void log(String... record) {
+        final int count = mJournal.getCount();
+        if (!mJournal.append(record) ||
+                (count >= COMPACT_THRESHOLD && count >= mItems.size() * 4)) {
+            // 记录过多或日志已作废时重写
+            compact();
+        }
+    }
+
+    private void retain(String digest) {
+        final Integer count = mReferences.get(digest);
+        mReferences.put(digest, count == null ? 1 : count + 1);
+    }
+
+    private boolean release(Item item) {
+        if (item.size == Item.SIZE_UNKNOWN) {
+            mReserved -= item.reserved;
+            // 未提交的子项仅有暂存文件
+            return FileHelper.delete(getItemFile(item.getStagingFilename()));
+        }
+        if (item.digest == null) {
+            if (item.size != Item.SIZE_UNKNOWN) {
+                mBytes -= item.size;
+            }
+            return FileHelper.delete(getItemFile(item.getFilename()));
+        }
+        final boolean result = FileHelper.delete(
+                getItemFile(item.getFilename() + SEPARATOR_DIGEST + item.digest));
+        final Integer count = mReferences.get(item.digest);
+        if (count == null || count <= 1) {
+            // 最后一个引用，删除共享数据块
+            mReferences.remove(item.digest);
+            mBytes -= item.size;
+            FileHelper.delete(getBlobFile(item.digest));
+        } else {
+            mReferences.put(item.digest, count - 1);
+        }
+        return result;
+    }
+
+    private File getFile(Item item) {
+        if (item.digest != null) {
+            return getBlobFile(item.digest);
+        }
+        return getItemFile(item.getFilename());
+    }
+
+    /**
+     * 获取子项暂存文件，写入中的子项写入该文件，提交时重命名发布
+     *
+     * @param name 子项名称
+     * @return 暂存文件
+     */
+    synchronized File getStagingFile(String name) {
+        final Item item = getItems().get(name);
+        return getItemFile(item == null ? name + Item.SUFFIX_STAGING : item.getStagingFilename());
+    }
+
+    /**
+     * 判断子项是否存在
+     *
+     * @param name 子项名称
+     * @return 存在时返回true
+     */
+    synchronized boolean contains(String name) {
+        return getItems().containsKey(name);
+    }
+
+    /**
+     * 以只读方式打开子项，去重子项打开共享数据块
+     * 持有锁解析并打开文件，避免与提交时的重命名及删除交错；已打开的文件不受之后的删除影响
+     *
+     * @param name 子项名称
+     * @return 文件，子项不存在时返回null
+     * @throws FileNotFoundException 子项未提交或打开失败
+     */
+    synchronized ParcelFileDescriptor open(String name) throws FileNotFoundException {
+        final Item item = getItems().get(name);
+        if (item == null) {
+            return null;
+        }
+        return ParcelFileDescriptor.open(getFile(item), ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    /**
+     * 获取子项并记录访问时间
+     *
+     * @param name 子项名称
+     * @return 子项，不存在时返回null
+     */
+    synchronized Item get(String name) {
+        final Item item = getItems().get(name);
+        if (item != null) {
+            item.accessed = System.currentTimeMillis();
+        }
+        return item;
+    }
+
+    /**
+     * 获取子项大小，写入中的子项返回当前文件大小
+     *
+     * @param name 子项名称
+     * @return 子项大小，不存在时返回{@link Item#SIZE_UNKNOWN}
+     */
+    synchronized long getSize(String name) {
+        final Item item = getItems().get(name);
+        if (item == null) {
+            return Item.SIZE_UNKNOWN;
+        }
+        return item.size == Item.SIZE_UNKNOWN ?
+                getItemFile(item.getStagingFilename()).length() : item.size;
+    }
+
+    /**
+     * 添加子项，写入开始时调用
+     *
+     * @param name     子项名称
+     * @param mimeType MIME类型
+     * @param length   预计大小，未知时为{@link Item#SIZE_UNKNOWN}
+     * @return 超出配额时返回false
+     */
+    synchronized boolean add(String name, String mimeType, long length) {
+        final long reserved = Math.max(0, length);
+        getItems();
+        if (!ensureQuota(reserved, 1)) {
+            return false;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        getItemFile(name).getParentFile().mkdirs();
+        final Item item = new Item(name, mimeType, Item.SIZE_UNKNOWN, System.currentTimeMillis());
+        item.generation = mGeneration;
+        item.reserved = reserved;
+        mReserved += reserved;
+        mItems.put(name, item);
+        log(ClipboardJournal.RECORD_ADD, name, mimeType == null ? null : Uri.encode(mimeType),
+                Long.toString(item.created));
+        return true;
+    }
+
+    /**
+     * 设置子项压缩格式，需在写入数据前调用
+     *
+     * @param name  子项名称
+     * @param codec 压缩格式
+     * @param level 压缩等级
+     * @return 子项文件
+     */
+    synchronized File setCodec(String name, String codec, int level) {
+        final Item item = getItems().get(name);
+        if (item == null) {
+            return null;
+        }
+        item.codec = codec;
+        item.level = level;
+        log(ClipboardJournal.RECORD_CODEC, name, codec, Integer.toString(level));
+        return getItemFile(item.getStagingFilename());
+    }
+
+    /**
+     * 获取剪切板历史
+     *
+     * @return 剪切板代数，由新到旧排列，包含当前剪切板
+     */
+    synchronized long[] getHistory() {
+        getItems();
+        final long[] generations = new long[mHistory.size()];
+        int i = generations.length;
+        for (long generation : mHistory.keySet()) {
+            generations[--i] = generation;
+        }
+        return generations;
+    }
+
+    /**
+     * 获取历史剪切板的子项
+     *
+     * @param generation 剪切板代数
+     * @return 子项名称，剪切板不存在或部分子项已被淘汰时返回null
+     */
+    synchronized String[] getHistory(long generation) {
+        final HashMap<String, Item> items = getItems();
+        final String[] names = mHistory.get(generation);
+        if (names == null) {
+            return null;
+        }
+        for (String name : names) {
+            if (!items.containsKey(name)) {
+                return null;
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 设置子项原始大小，压缩子项需在提交前调用
+     *
+     * @param name   子项名称
+     * @param length 原始大小
+     */
+    synchronized void setLength(String name, long length) {
+        final Item item = getItems().get(name);
+        if (item != null) {
+            item.length = length;
+        }
+    }
+
+    /**
+     * 获取子项快照，不记录访问时间
+     *
+     * @param names 子项名称
+     * @return 子项快照，不存在的子项被忽略
+     */
+    synchronized List<Item> getSnapshot(String[] names) {
+        final HashMap<String, Item> items = getItems();
+        final ArrayList<Item> snapshot = new ArrayList<>();
+        for (String name : names) {
+            final Item item = items.get(name);
+            if (item != null) {
+                snapshot.add(item.copy());
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * 提交子项，写入完成后调用
+     * 暂存文件重命名为子项文件，去重时计算内容摘要，内容相同的子项共享同一数据块；
+     * 逐项持久化时，重命名前同步数据，提交后同步目录及日志
+     *
+     * @param name        子项名称
+     * @param deduplicate 是否去重
+     * @return 提交成功时返回true，超出配额时返回false
+     */
+    boolean commit(String name, boolean deduplicate) {
+        final String filename;
+        final boolean sync;
+        synchronized (this) {
+            final Item item = getItems().get(name);
+            if (item == null) {
+                return false;
+            }
+            filename = item.getFilename();
+            final int durability = mSettings.getDurability();
+            // 按剪切板持久化时，已发布的延迟写入子项需单独同步
+            sync = durability == SuperClipboard.DURABILITY_ITEM ||
+                    (durability == SuperClipboard.DURABILITY_CLIP && mLive.contains(name));
+        }
+        final File file = getItemFile(filename + Item.SUFFIX_STAGING);
+        final long size = file.length();
+        // 摘要计算及同步较慢，不持有锁
+        final String digest = deduplicate ? FileHelper.digest(file) : null;
+        if (sync && !FileHelper.sync(file)) {
+            return false;
+        }
+        synchronized (this) {
+            final Item item = getItems().get(name);
+            if (item == null || item.size != Item.SIZE_UNKNOWN) {
+                return false;
+            }
+            if (digest == null && deduplicate) {
+                return false;
+            }
+            // 以实际大小替换预留大小
+            mReserved -= item.reserved;
+            item.reserved = 0;
+            final boolean shared = digest != null && mReferences.containsKey(digest);
+            if (!ensureQuota(shared ? 0 : size, 0)) {
+                return false;
+            }
+            if (digest == null) {
+                if (!file.renameTo(getItemFile(filename))) {
+                    return false;
+                }
+                item.size = size;
+                mBytes += size;
+                log(getCommitRecord(item));
+                finishCommit(item, sync);
+                return true;
+            }
+            // 先创建标记再移动数据块，提交中途崩溃时重放日志可据标记删除数据块
+            final File marker = getItemFile(filename + SEPARATOR_DIGEST + digest);
+            try {
+                if (!marker.createNewFile()) {
+                    return false;
+                }
+            } catch (IOException e) {
+                return false;
+            }
+            if (shared) {
+                // 已存在相同内容
+                if (!file.delete()) {
+                    FileHelper.delete(marker);
+                    return false;
+                }
+            } else {
+                final File blob = getBlobFile(digest);
+                //noinspection ResultOfMethodCallIgnored
+                blob.getParentFile().mkdirs();
+                if (!file.renameTo(blob)) {
+                    FileHelper.delete(marker);
+                    return false;
+                }
+            }
+            item.size = size;
+            item.digest = digest;
+            if (!shared) {
+                mBytes += size;
+            }
+            retain(digest);
+            log(getCommitRecord(item));
+            finishCommit(item, sync);
+            return true;
+        }
+    }
+
+    private void finishCommit(Item item, boolean sync) {
+        if (sync) {
+            syncDirectories(Collections.singletonList(item));
+            mJournal.sync();
+        } else {
+            // 按剪切板持久化时，设置剪切板时统一同步
+            item.dirty = mSettings.getDurability() == SuperClipboard.DURABILITY_CLIP;
+        }
+    }
+
+    /**
+     * 同步子项所在的分片及其上级文件夹，每个文件夹仅同步一次
+     */
+    private void syncDirectories(Collection<Item> items) {
+        final HashSet<File> directories = new HashSet<>();
+        for (Item item : items) {
+            directories.add(getItemFile(item.getFilename()).getParentFile());
+            if (item.digest != null) {
+                directories.add(getBlobFile(item.digest).getParentFile());
+                directories.add(mBlobDirectory);
+            }
+        }
+        if (directories.isEmpty()) {
+            return;
+        }
+        directories.add(mItemDirectory);
+        for (File directory : directories) {
+            FileHelper.syncDirectory(directory);
+        }
+    }
+
+    /**
+     * 删除子项
+     *
+     * @param names 子项名称
+     * @return 删除的子项个数
+     */
+    synchronized int remove(String[] names) {
+        final HashMap<String, Item> items = getItems();
+        int count = 0;
+        for (String name : names) {
+            final Item item = items.remove(name);
+            if (item == null) {
+                continue;
+            }
+            mLive.remove(name);
+            log(ClipboardJournal.RECORD_DELETE, name);
+            if (release(item)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 删除保留集合及剪切板历史以外的子项，保留的子项成为新一代的当前剪切板
+     * 仅遍历索引，不扫描目录；按剪切板持久化时，统一同步当前剪切板的子项
+     *
+     * @param excluded 保留的子项名称
+     * @return 删除的子项个数
+     */
+    synchronized int removeExcept(Set<String> excluded) {
+        final HashMap<String, Item> items = getItems();
+        final ArrayList<String> live = new ArrayList<>();
+        for (String name : excluded) {
+            if (items.containsKey(name)) {
+                live.add(name);
+            }
+        }
+        // 检查剪切板时保留的仍是当前剪切板，不产生新的一代
+        final boolean changed = live.isEmpty() || live.size() != mLive.size() ||
+                !mLive.containsAll(live);
+        if (changed) {
+            mGeneration++;
+            mLive.clear();
+            mLive.addAll(live);
+            if (!live.isEmpty()) {
+                mHistory.put(mGeneration, live.toArray(new String[0]));
+            }
+            trimHistory();
+        }
+        // 历史剪切板仅保留已提交的子项，未提交的延迟写入及流式子项随剪切板替换失效
+        final HashSet<String> retained = new HashSet<>(mLive);
+        for (String[] names : mHistory.values()) {
+            for (String name : names) {
+                final Item item = items.get(name);
+                if (item != null && item.size != Item.SIZE_UNKNOWN) {
+                    retained.add(name);
+                }
+            }
+        }
+        final ArrayList<Item> removed = new ArrayList<>();
+        final Iterator<Map.Entry<String, Item>> iterator = items.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Item item = iterator.next().getValue();
+            if (!retained.contains(item.name)) {
+                iterator.remove();
+                removed.add(item);
+            }
+        }
+        for (Item item : removed) {
+            log(ClipboardJournal.RECORD_DELETE, item.name);
+        }
+        if (changed) {
+            log(getLiveRecord(mGeneration, mLive));
+        }
+        final int durability = mSettings.getDurability();
+        if (durability == SuperClipboard.DURABILITY_CLIP) {
+            final ArrayList<Item> dirty = new ArrayList<>();
+            for (String name : mLive) {
+                final Item item = mItems.get(name);
+                if (item.dirty) {
+                    FileHelper.sync(getFile(item));
+                    item.dirty = false;
+                    dirty.add(item);
+                }
+            }
+            syncDirectories(dirty);
+        }
+        if (durability != SuperClipboard.DURABILITY_NONE) {
+            mJournal.sync();
+        }
+        int count = 0;
+        for (Item item : removed) {
+            // 共享数据块仅在没有引用时删除
+            if (release(item)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 清空
+     * 子项及数据块文件夹整体移走后由后台删除，耗时与子项个数无关
+     *
+     * @return 删除的子项个数
+     */
+    synchronized int clear() {
+        // 确保旧版本平铺的文件已迁移或删除
+        final int count = getItems().size();
+        mItems = new HashMap<>();
+        mReferences.clear();
+        mLive.clear();
+        mHistory.clear();
+        mBytes = 0;
+        mReserved = 0;
+        mJournal.reset();
+        final ArrayList<File> garbage = new ArrayList<>();
+        trash(mItemDirectory, garbage);
+        trash(mBlobDirectory, garbage);
+        //noinspection ResultOfMethodCallIgnored
+        mItemDirectory.mkdirs();
+        delete(garbage);
+        compact();
+        return count;
+    }
+
+    /**
+     * 子项
+     * 文件名为“名称”或“名称.压缩格式压缩等级”，如：xxx.deflate6；暂存文件名另加“.tmp”后缀
+     */
+    static final class Item {
+
+        static final long SIZE_UNKNOWN = -1;
+        static final String SUFFIX_STAGING = ".tmp";
+        private static final char SEPARATOR_CODEC = '.';
+        final String name;
+        final String mimeType;
+        final long created;
+        long size;// 存储大小，压缩子项为压缩后大小
+        String digest;// 内容摘要，仅去重子项有效
+        String codec;// 压缩格式，未压缩时为空
+        int level;// 压缩等级
+        long accessed;// 最后访问时间
+        long reserved;// 写入中预留的存储大小
+        long generation = -1;// 写入时的剪切板代数，恢复的子项为-1
+        boolean dirty;// 已提交但尚未同步
+        long length = SIZE_UNKNOWN;// 原始大小，仅压缩子项记录
+
+        Item(String name, String mimeType, long size, long created) {
+            this.name = name;
+            this.mimeType = mimeType;
+            this.size = size;
+            this.created = created;
+            this.accessed = created;
+        }
+
+        static Item parse(String filename, long size, long created) {
+            final int index = filename.indexOf(SEPARATOR_CODEC);
+            if (index < 0) {
+                return new Item(filename, null, size, created);
+            }
+            final Item item = new Item(filename.substring(0, index), null, size, created);
+            final String suffix = filename.substring(index + 1);
+            int start = suffix.length();
+            while (start > 0 && Character.isDigit(suffix.charAt(start - 1))) {
+                start--;
+            }
+            if (start > 0 && start < suffix.length()) {
+                item.codec = suffix.substring(0, start);
+                item.level = Integer.parseInt(suffix.substring(start));
+            }
+            return item;
+        }
+
+        String getFilename() {
+            return codec == null ? name : name + SEPARATOR_CODEC + codec + level;
+        }
+
+        String getStagingFilename() {
+            return getFilename() + SUFFIX_STAGING;
+        }
+
+        /**
+         * 获取原始大小
+         *
+         * @return 原始大小，未提交或未知时返回{@link #SIZE_UNKNOWN}
+         */
+        long getLength() {
+            return codec == null ? size : length;
+        }
+
+        Item copy() {
+            final Item item = new Item(name, mimeType, size, created);
+            item.digest = digest;
+            item.codec = codec;
+            item.level = level;
+            item.accessed = accessed;
+            item.length = length;
+            return item;
+        }
+    }
+}
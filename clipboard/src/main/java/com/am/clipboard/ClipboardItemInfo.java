@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2021 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.am.clipboard;
+
+/**
+ * 剪切板子项信息
+ * 仅包含元数据，获取时不读取子项数据
+ */
+public final class ClipboardItemInfo {
+
+    /**
+     * 未知大小或时间
+     */
+    public static final long UNKNOWN = -1;
+    /**
+     * 压缩格式：zlib格式的DEFLATE数据，可使用{@link java.util.zip.InflaterInputStream}解压
+     */
+    public static final String CODEC_DEFLATE = CompressionHelper.CODEC_DEFLATE;
+    private final String mName;
+    private final String mMimeType;
+    private final long mLength;
+    private final long mCreated;
+    private final String mChecksum;
+    private final String mCodec;
+
+    ClipboardItemInfo(String name, String mimeType, long length, long created,
+                      String checksum, String codec) {
+        mName = name;
+        mMimeType = mimeType;
+        mLength = length;
+        mCreated = created;
+        mChecksum = checksum;
+        mCodec = codec;
+    }
+
+    /**
+     * 获取名称
+     *
+     * @return 名称，内联子项为空
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * 获取MIME类型
+     *
+     * @return MIME类型，多格式子项为首选格式
+     */
+    public String getMimeType() {
+        return mMimeType;
+    }
+
+    /**
+     * 获取数据大小
+     *
+     * @return 数据大小，压缩子项为解压后大小；延迟写入、流式及大小未知的子项返回{@link #UNKNOWN}
+     */
+    public long getLength() {
+        return mLength;
+    }
+
+    /**
+     * 获取创建时间
+     *
+     * @return 创建时间，内联子项返回{@link #UNKNOWN}
+     */
+    public long getCreated() {
+        return mCreated;
+    }
+
+    /**
+     * 获取内容摘要
+     *
+     * @return SHA-256摘要的十六进制字符串，仅启用内容去重时写入的子项有效，否则为空
+     */
+    public String getChecksum() {
+        return mChecksum;
+    }
+
+    /**
+     * 获取压缩格式
+     * 使用{@link SuperClipboard#FLAG_RAW}读取时，据此解压读取到的原始数据
+     *
+     * @return 压缩格式，如：{@link #CODEC_DEFLATE}；未压缩存储时为空
+     */
+    public String getCodec() {
+        return mCodec;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2021 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.am.clipboard;
+
+import android.content.ClipData;
+import android.content.Context;
+import android.os.ParcelFileDescriptor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 剪切板子项迭代器
+ * 仅持有剪切板子项，子项在调用{@link #next()}时才打开并读取，不保留已读取的子项。
+ * 任一子项读取失败后迭代结束；关闭时正在读取的子项中止读取。
+ */
+public final class ClipboardIterator<T> implements Iterator<T>, Closeable {
+
+    private final Context mContext;
+    private final ClipData.Item[] mItems;
+    private final SuperClipboard.ItemReader<T> mReader;
+    private final Object mLock = new Object();// 读取中的文件描述符锁
+    private int mPosition;
+    private volatile boolean mClosed;
+    private boolean mFailed;
+    private ParcelFileDescriptor mDescriptor;// 读取中的文件描述符
+    private T mItem;
+    private Exception mError;
+
+    ClipboardIterator(Context context, ClipData.Item[] items,
+                      SuperClipboard.ItemReader<T> reader) {
+        mContext = context;
+        mItems = items;
+        mReader = reader;
+    }
+
+    /**
+     * 获取子项总数
+     *
+     * @return 子项总数
+     */
+    public int getCount() {
+        return mItems.length;
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+        return !mClosed && !mFailed && mPosition < mItems.length;
+    }
+
+    /**
+     * 判断是否因子项读取失败而结束迭代
+     *
+     * @return 读取失败时返回true
+     */
+    public synchronized boolean isFailed() {
+        return mFailed;
+    }
+
+    /**
+     * 读取下一个子项
+     *
+     * @return 子项
+     * @throws ReadException 读取失败或读取中被关闭，之后不再有下一个子项
+     */
+    @Override
+    public synchronized T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final int position = mPosition++;
+        mItem = null;
+        mError = null;
+        final boolean success = ClipboardProvider.read(mContext, (mimeType, descriptor) -> {
+            synchronized (mLock) {
+                if (mClosed) {
+                    return false;
+                }
+                mDescriptor = descriptor;
+            }
+            try {
+                mItem = mReader.read(mimeType, descriptor);
+                return true;
+            } catch (Exception e) {
+                mError = e;
+                return false;
+            } finally {
+                synchronized (mLock) {
+                    mDescriptor = null;
+                }
+            }
+        }, mItems[position], false);
+        final T item = mItem;
+        final Exception error = mError;
+        mItem = null;
+        mError = null;
+        if (success && !mClosed) {
+            return item;
+        }
+        mFailed = true;
+        throw new ReadException(position, error != null ? error :
+                new IOException(mClosed ? "Iterator closed" : "Cannot read item"));
+    }
+
+    /**
+     * 关闭，正在读取的子项将中止读取
+     */
+    @Override
+    public void close() {
+        final ParcelFileDescriptor descriptor;
+        synchronized (mLock) {
+            mClosed = true;
+            descriptor = mDescriptor;
+            mDescriptor = null;
+        }
+        if (descriptor != null) {
+            // 关闭读取中的文件描述符，读取器随即读取失败并释放资源
+            FileHelper.closeQuietly(descriptor);
+        }
+    }
+
+    /**
+     * 子项读取异常
+     */
+    public static final class ReadException extends RuntimeException {
+
+        private final int mPosition;
+
+        ReadException(int position, Exception cause) {
+            super("Cannot read item at " + position, cause);
+            mPosition = position;
+        }
+
+        /**
+         * 获取读取失败的子项位置
+         *
+         * @return 子项位置
+         */
+        public int getPosition() {
+            return mPosition;
+        }
+    }
+}
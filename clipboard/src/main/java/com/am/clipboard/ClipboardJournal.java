@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2021 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.am.clipboard;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 剪切板日志
+ * 仅追加写入，每行一条记录，字段以空格分隔，冷启动时重放以重建索引
+ */
+class ClipboardJournal {
+
+    static final String RECORD_ADD = "A";// 添加：名称 MIME类型 创建时间
+    static final String RECORD_CODEC = "Z";// 压缩：名称 压缩格式 压缩等级
+    static final String RECORD_COMMIT = "C";// 提交：名称 存储大小 内容摘要 [原始大小]
+    static final String RECORD_DELETE = "D";// 删除：名称
+    static final String RECORD_LIVE = "L";// 当前剪切板：代数 名称...
+    private static final String FILENAME = "journal";
+    private static final String FILENAME_TEMP = "journal.tmp";
+    private static final String SEPARATOR = " ";
+    private static final char NEW_LINE = '\n';
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private final File mFile;
+    private final File mTemp;
+    private FileOutputStream mOutput;
+    private int mCount;
+    private boolean mBroken;
+
+    ClipboardJournal(File directory) {
+        mFile = new File(directory, FILENAME);
+        mTemp = new File(directory, FILENAME_TEMP);
+    }
+
+    /**
+     * 判断是否为日志文件
+     *
+     * @param filename 文件名
+     * @return 是日志文件时返回true
+     */
+    static boolean isJournal(String filename) {
+        return FILENAME.equals(filename) || FILENAME_TEMP.equals(filename);
+    }
+
+    /**
+     * 判断日志是否存在
+     *
+     * @return 存在时返回true
+     */
+    boolean exists() {
+        return mFile.isFile();
+    }
+
+    /**
+     * 获取记录条数
+     *
+     * @return 记录条数
+     */
+    int getCount() {
+        return mCount;
+    }
+
+    /**
+     * 读取全部记录
+     * 末尾未写完的记录将被忽略并截去，避免之后追加的记录与其拼接
+     *
+     * @return 记录，读取失败时返回null
+     */
+    List<String[]> read() {
+        final byte[] data;
+        try (final InputStream input = new FileInputStream(mFile)) {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            FileHelper.copy(input, output);
+            data = output.toByteArray();
+        } catch (IOException e) {
+            return null;
+        }
+        final ArrayList<String[]> records = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != NEW_LINE) {
+                continue;
+            }
+            if (i > start) {
+                records.add(new String(data, start, i - start, CHARSET).split(SEPARATOR, -1));
+            }
+            start = i + 1;
+        }
+        if (start < data.length) {
+            // 崩溃时未写完的记录
+            try (final RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+                file.setLength(start);
+            } catch (IOException e) {
+                // 无法截去时日志作废，由下次追加时重写
+                mBroken = true;
+            }
+        }
+        mCount = records.size();
+        return records;
+    }
+
+    private static byte[] toBytes(String[] record) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < record.length; i++) {
+            if (i > 0) {
+                builder.append(SEPARATOR);
+            }
+            if (record[i] != null) {
+                builder.append(record[i]);
+            }
+        }
+        builder.append(NEW_LINE);
+        return builder.toString().getBytes(CHARSET);
+    }
+
+    /**
+     * 追加记录
+     * 写入失败后日志作废并删除，直至重写成功，避免重放不完整的日志
+     *
+     * @param record 记录
+     * @return 追加成功时返回true
+     */
+    boolean append(String... record) {
+        if (mBroken) {
+            return false;
+        }
+        try {
+            if (mOutput == null) {
+                mOutput = new FileOutputStream(mFile, true);
+            }
+            // 单次写入，进程崩溃时最多丢失末尾一条记录
+            mOutput.write(toBytes(record));
+            mCount++;
+            return true;
+        } catch (IOException e) {
+            FileHelper.closeQuietly(mOutput);
+            mOutput = null;
+            mBroken = true;
+            FileHelper.delete(mFile);
+            return false;
+        }
+    }
+
+    /**
+     * 重写日志
+     * 先写入临时文件，再替换原日志
+     *
+     * @param records 记录
+     * @param sync    是否同步
+     * @return 重写成功时返回true
+     */
+    boolean rewrite(List<String[]> records, boolean sync) {
+        try (final FileOutputStream output = new FileOutputStream(mTemp)) {
+            for (String[] record : records) {
+                output.write(toBytes(record));
+            }
+            if (sync) {
+                // 避免系统崩溃后替换为不完整的日志
+                output.getFD().sync();
+            }
+        } catch (IOException e) {
+            FileHelper.delete(mTemp);
+            return false;
+        }
+        FileHelper.closeQuietly(mOutput);
+        mOutput = null;
+        if (!mTemp.renameTo(mFile)) {
+            FileHelper.delete(mTemp);
+            return false;
+        }
+        mCount = records.size();
+        mBroken = false;
+        return true;
+    }
+
+    /**
+     * 同步日志至磁盘
+     *
+     * @return 同步成功时返回true
+     */
+    boolean sync() {
+        if (mBroken) {
+            return false;
+        }
+        if (mOutput == null) {
+            return FileHelper.sync(mFile);
+        }
+        try {
+            mOutput.getFD().sync();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 重置日志，删除全部记录
+     */
+    void reset() {
+        FileHelper.closeQuietly(mOutput);
+        mOutput = null;
+        FileHelper.delete(mFile);
+        FileHelper.delete(mTemp);
+        mCount = 0;
+        mBroken = false;
+    }
+}
@@ -1,5 +1,7 @@
 package com.am.clipboard;
 
+import android.content.ClipData;
+import android.content.ClipDescription;
 import android.content.ContentProvider;
 import android.content.ContentResolver;
 import android.content.ContentValues;
@@ -8,20 +10,34 @@ import android.content.UriMatcher;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
+import android.content.res.AssetFileDescriptor;
 import android.database.AbstractCursor;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
 import android.os.ParcelFileDescriptor;
 import android.text.TextUtils;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 public class ClipboardProvider extends ContentProvider {
 
@@ -29,16 +45,59 @@ public class ClipboardProvider extends ContentProvider {
     private static final String PATH_CLEAR = "clear";
     private static final String PATH_DELETE = "delete";
     private static final String PATH_CHECK = "check";
+    private static final String PATH_REMOVE = "remove";
+    private static final String PATH_METADATA = "metadata";
+    private static final String PATH_HISTORY = "history";
+    private static final String METHOD_CHECK = "check";
+    private static final String METHOD_COMMIT = "commit";
+    private static final String METHOD_DEFER = "defer";
+    private static final String METHOD_RESUME = "resume";
+    private static final String METHOD_RECORD = "record";
+    private static final String METHOD_CONFIGURE = "configure";
+    private static final String EXTRA_DEDUPLICATE = "deduplicate";
+    private static final String EXTRA_NAMES = "names";
+    private static final String EXTRA_ALL = "all";
+    private static final String EXTRA_RESULT = "result";
+    private static final String EXTRA_TYPES = "types";
+    private static final String EXTRA_LENGTHS = "lengths";
+    private static final String EXTRA_TYPE = "type";
+    private static final String EXTRA_MATCHED = "matched";
+    private static final String EXTRA_TRANSFER = "transfer";
+    private static final String EXTRA_LENGTH = "length";
+    private static final String EXTRA_OFFSET = "offset";
+    private static final String PARAM_CODEC = "codec";
+    private static final String PARAM_LEVEL = "level";
+    private static final String PARAM_THRESHOLD = "threshold";
+    private static final String PARAM_RAW = "raw";
+    private static final String PARAM_LENGTH = "length";
+    private static final String PARAM_TRANSFER = "transfer";
+    private static final String COLUMN_ID = "id";
+    private static final String COLUMN_NAME = "name";
+    private static final String COLUMN_MIME_TYPE = "mime_type";
+    private static final String COLUMN_LENGTH = "length";
+    private static final String COLUMN_CREATED = "created";
+    private static final String COLUMN_CHECKSUM = "checksum";
+    private static final String COLUMN_CODEC = "codec";
+    private static final String[] COLUMNS_METADATA = {COLUMN_NAME, COLUMN_MIME_TYPE,
+            COLUMN_LENGTH, COLUMN_CREATED, COLUMN_CHECKSUM, COLUMN_CODEC};
     private static final String MODE_WRITE = "w";
     private static final String MODE_READ = "r";
     private static final int CODE_ITEM = 1;
     private static final int CODE_CLEAR = 2;
     private static final int CODE_DELETE = 3;
     private static final int CODE_CHECK = 4;
+    private static final int CODE_REMOVE = 5;
+    private static final int CODE_METADATA = 6;
+    private static final int CODE_HISTORY = 7;
+    private static final int CODE_HISTORY_CLIP = 8;
     private static String sAuthority;
     private static Uri sUri;
     private final UriMatcher mMatcher = new UriMatcher(UriMatcher.NO_MATCH);
     private File mDirectory;// 剪切板文件夹
+    private ClipboardIndex mIndex;// 剪切板子项索引
+    private ClipboardSettings mSettings;// 存储设置
+    private final HashMap<String, PendingWrite> mPending = new HashMap<>();// 写入中的压缩子项
+    private final HashMap<String, String> mTransfers = new HashMap<>();// 分块写入中子项的传输标识
 
     private static String getAuthority(Context context) {
         if (sAuthority == null) {
@@ -75,7 +134,28 @@ public class ClipboardProvider extends ContentProvider {
         return Uri.withAppendedPath(sUri, pathSegment);
     }
 
-    static void delete(Context context, List<Uri> uris) {
+    /**
+     * 获取本内容提供者子项的MIME类型
+     *
+     * @param context Context
+     * @param uri     子项
+     * @return MIME类型，非本内容提供者的子项或格式错误时返回null
+     */
+    static String getMimeType(Context context, Uri uri) {
+        if (uri == null || !ContentResolver.SCHEME_CONTENT.equals(uri.getScheme()) ||
+                !TextUtils.equals(uri.getAuthority(), getAuthority(context))) {
+            return null;
+        }
+        final List<String> segments = uri.getPathSegments();
+        if (segments == null || segments.size() != 3 || !PATH_ITEM.equals(segments.get(0)) ||
+                TextUtils.isEmpty(segments.get(2))) {
+            return null;
+        }
+        final String mimeType = segments.get(1);
+        return TextUtils.isEmpty(mimeType) ? null : mimeType;
+    }
+
+    private static ArrayList<String> getNames(List<Uri> uris) {
         final ArrayList<String> names = new ArrayList<>();
         for (Uri uri : uris) {
             final List<String> segments = uri.getPathSegments();
@@ -88,21 +168,208 @@ public class ClipboardProvider extends ContentProvider {
             }
             names.add(name);
         }
+        return names;
+    }
+
+    static void delete(Context context, List<Uri> uris) {
         context.getContentResolver().delete(getUri(context, PATH_DELETE), null,
-                names.toArray(new String[0]));
+                getNames(uris).toArray(new String[0]));
     }
 
-    static ArrayList<Uri> write(Context context, SuperClipboard.OutputAdapter adapter,
-                                Set<String> mimeTypes) {
+    static void remove(Context context, List<Uri> uris) {
+        CacheHelper.remove(uris);
+        final ArrayList<String> names = getNames(uris);
+        if (names.isEmpty()) {
+            return;
+        }
+        // 取消任务时当前线程已被中断，删除期间清除中断状态，
+        // 避免同一进程的内容提供者等待写入结束及同步文件时被中断
+        final boolean interrupted = Thread.interrupted();
+        try {
+            context.getContentResolver().delete(getUri(context, PATH_REMOVE), null,
+                    names.toArray(new String[0]));
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static ClipData.Item write(Context context, SuperClipboard.OutputAdapter adapter,
+                                       int position, Uri uri,
+                                       SuperClipboard.ProgressListener listener,
+                                       ClipboardTask task) {
+        final int threshold = InlineHelper.getThreshold();
+        if (threshold > 0 && !(adapter instanceof SuperClipboard.MultiOutputAdapter)) {
+            final byte[] data = InlineHelper.toByteArray(adapter, position, threshold);
+            if (data != null) {
+                // 内联，不创建文件
+                return InlineHelper.newItem(adapter.getMimeType(position), data);
+            }
+        }
+        final ContentResolver resolver = context.getContentResolver();
+        final CompressionHelper.Config compression =
+                CompressionHelper.getConfig(adapter.getMimeType(position));
+        final Uri.Builder builder = uri.buildUpon();
+        if (compression != null) {
+            builder.appendQueryParameter(PARAM_CODEC, compression.codec)
+                    .appendQueryParameter(PARAM_LEVEL, Integer.toString(compression.level))
+                    .appendQueryParameter(PARAM_THRESHOLD, Long.toString(compression.threshold));
+        }
+        final long length = adapter instanceof SuperClipboard.SizedOutputAdapter ?
+                ((SuperClipboard.SizedOutputAdapter) adapter).getLength(position) : -1;
+        if (length >= 0) {
+            // 预计大小，用于写入前判断配额
+            builder.appendQueryParameter(PARAM_LENGTH, Long.toString(length));
+        }
+        final Uri target = builder.build();
+        final long chunk = TransferHelper.getChunkSize();
+        final boolean chunked = compression == null && chunk > 0 && length > chunk &&
+                adapter instanceof SuperClipboard.ChunkedOutputAdapter;
+        if (chunked) {
+            if (!writeChunked(context, (SuperClipboard.ChunkedOutputAdapter) adapter, position,
+                    target, length, chunk, listener, task)) {
+                return null;
+            }
+        } else {
+            try (final ParcelFileDescriptor descriptor =
+                         resolver.openFileDescriptor(target, MODE_WRITE)) {
+                if (!adapter.write(position, descriptor)) {
+                    return null;
+                }
+            } catch (Exception e) {
+                // do nothing
+                e.printStackTrace();
+                return null;
+            }
+        }
+        final Bundle extras = new Bundle();
+        extras.putBoolean(EXTRA_DEDUPLICATE, SuperClipboard.isDeduplicateEnabled());
+        try {
+            final Bundle result = resolver.call(getUri(context, PATH_ITEM), METHOD_COMMIT,
+                    uri.getLastPathSegment(), extras);
+            if (result == null || !result.getBoolean(EXTRA_RESULT, false)) {
+                return null;
+            }
+        } catch (Exception e) {
+            return null;
+        }
+        if (listener != null && !chunked && length >= 0) {
+            listener.onProgress(position, length, length);
+        }
+        if (adapter instanceof CacheHelper.CacheableOutputAdapter) {
+            // 同一进程粘贴时直接使用缓存
+            CacheHelper.put(uri, ((CacheHelper.CacheableOutputAdapter) adapter).getCache(position));
+        }
+        return new ClipData.Item(uri);
+    }
+
+    /**
+     * 分块写入子项
+     * 每块写入并同步后记录已提交的偏移，中断后以相同传输标识再次写入时从已提交的偏移继续；
+     * 无传输标识或同一数据正在写入时不续传，仅分块写入
+     */
+    private static boolean writeChunked(Context context,
+                                        SuperClipboard.ChunkedOutputAdapter adapter,
+                                        int position, Uri target, long length, long chunk,
+                                        SuperClipboard.ProgressListener listener,
+                                        ClipboardTask task) {
+        final ContentResolver resolver = context.getContentResolver();
+        final Uri uri = getUri(context, PATH_ITEM);
+        final String name = target.getLastPathSegment();
+        final String key = adapter.getKey(position);
+        String id = key == null ? null : TransferHelper.getId(key);
+        long offset = 0;
+        if (id != null) {
+            final Bundle extras = new Bundle();
+            extras.putString(EXTRA_TRANSFER, id);
+            extras.putLong(EXTRA_LENGTH, length);
+            try {
+                final Bundle result = resolver.call(uri, METHOD_RESUME, name, extras);
+                offset = result == null ? -1 : result.getLong(EXTRA_OFFSET, -1);
+            } catch (Exception e) {
+                offset = -1;
+            }
+            if (offset < 0) {
+                id = null;
+                offset = 0;
+            }
+        }
+        final ParcelFileDescriptor descriptor;
+        try {
+            descriptor = resolver.openFileDescriptor(id == null ? target : target.buildUpon()
+                    .appendQueryParameter(PARAM_TRANSFER, id).build(), MODE_WRITE);
+        } catch (Exception e) {
+            return false;
+        }
+        if (descriptor == null) {
+            return false;
+        }
+        try (final FileOutputStream output =
+                     new ParcelFileDescriptor.AutoCloseOutputStream(descriptor)) {
+            final FileChannel channel = output.getChannel();
+            if (listener != null) {
+                listener.onProgress(position, offset, length);
+            }
+            while (offset < length) {
+                if (task != null && task.isCancelled()) {
+                    return false;
+                }
+                final long count = Math.min(chunk, length - offset);
+                channel.position(offset);
+                if (!adapter.write(position, offset, count, channel) ||
+                        channel.position() != offset + count) {
+                    return false;
+                }
+                channel.force(false);
+                offset += count;
+                if (id != null) {
+                    final Bundle extras = new Bundle();
+                    extras.putLong(EXTRA_LENGTH, length);
+                    extras.putLong(EXTRA_OFFSET, offset);
+                    final Bundle result = resolver.call(uri, METHOD_RECORD, name, extras);
+                    if (result == null || !result.getBoolean(EXTRA_RESULT, false)) {
+                        return false;
+                    }
+                }
+                if (listener != null) {
+                    listener.onProgress(position, offset, length);
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * 写入子项
+     * 小于内联阈值的子项内联于剪切板子项中，其他子项写入文件；多格式子项均按延迟写入处理
+     *
+     * @param context   Context
+     * @param adapter   输出内容提供者
+     * @param mimeTypes 写入成功时添加全部子项的MIME类型
+     * @param flags     标志
+     * @param listener  进度监听，可为空
+     * @param task      任务，可为空
+     * @return 剪切板子项，失败时为空
+     */
+    static ArrayList<ClipData.Item> write(Context context, SuperClipboard.OutputAdapter adapter,
+                                          Set<String> mimeTypes, int flags,
+                                          SuperClipboard.ProgressListener listener,
+                                          ClipboardTask task) {
         if (context == null || adapter == null || mimeTypes == null) {
             return new ArrayList<>();
         }
-        final ContentResolver resolver = context.getContentResolver();
         final int count = adapter.getCount();
         if (count <= 0) {
             return new ArrayList<>();
         }
-        final ArrayList<Uri> uris = new ArrayList<>();
+        configure(context);
+        final Uri[] items = new Uri[count];
+        final String[] types = new String[count];
+        final String[][] representations = adapter instanceof SuperClipboard.MultiOutputAdapter ?
+                new String[count][] : null;
         for (int i = 0; i < count; i++) {
             final String mimeType = adapter.getMimeType(i);
             if (TextUtils.isEmpty(mimeType)) {
@@ -110,71 +377,479 @@ public class ClipboardProvider extends ContentProvider {
                 return new ArrayList<>();
             }
             final String name = UUID.randomUUID().toString();
-            final Uri uri = getUri(context,
+            types[i] = mimeType;
+            items[i] = getUri(context,
                     PATH_ITEM + "/" + Uri.encode(mimeType) + "/" + name);
-            boolean success = false;
-            try (final ParcelFileDescriptor descriptor =
-                         resolver.openFileDescriptor(uri, MODE_WRITE)) {
-                success = adapter.write(i, descriptor);
-            } catch (Exception e) {
-                // do nothing
-                e.printStackTrace();
+            if (representations != null) {
+                representations[i] = getRepresentations(
+                        (SuperClipboard.MultiOutputAdapter) adapter, i, mimeType);
             }
-            if (success) {
-                mimeTypes.add(mimeType);
-                uris.add(uri);
-            } else {
+        }
+        if (representations != null ||
+                (flags & (SuperClipboard.FLAG_DEFERRED | SuperClipboard.FLAG_STREAMING)) != 0) {
+            final boolean streaming = (flags & SuperClipboard.FLAG_STREAMING) != 0;
+            if ((task != null && task.isCancelled()) ||
+                    !defer(context, adapter, items, types, representations, streaming)) {
                 mimeTypes.clear();
                 return new ArrayList<>();
             }
+            mimeTypes.addAll(Arrays.asList(types));
+            if (representations != null) {
+                for (String[] representation : representations) {
+                    mimeTypes.addAll(Arrays.asList(representation));
+                }
+            }
+            final ArrayList<ClipData.Item> results = new ArrayList<>();
+            for (Uri item : items) {
+                results.add(new ClipData.Item(item));
+            }
+            return results;
+        }
+        final ClipData.Item[] results = new ClipData.Item[count];
+        final ExecutorHelper.Task write = position -> {
+            if (task != null && task.isCancelled()) {
+                return false;
+            }
+            results[position] =
+                    write(context, adapter, position, items[position], listener, task);
+            return results[position] != null;
+        };
+        final boolean success;
+        if ((flags & SuperClipboard.FLAG_PARALLEL) != 0 && count > 1) {
+            // 必须等待全部子项结束，否则回滚后仍可能有子项写入
+            success = ExecutorHelper.runParallel(count, task, write);
+        } else {
+            boolean result = true;
+            for (int i = 0; i < count; i++) {
+                if (!write.run(i)) {
+                    result = false;
+                    break;
+                }
+            }
+            success = result;
+        }
+        if (!success || (task != null && task.isCancelled())) {
+            // 回滚已写入的子项
+            remove(context, Arrays.asList(items));
+            mimeTypes.clear();
+            return new ArrayList<>();
+        }
+        mimeTypes.addAll(Arrays.asList(types));
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
+    /**
+     * 传递本进程的存储设置，由内容提供者保存，写入及之后冷启动时使用
+     */
+    private static void configure(Context context) {
+        final Bundle extras = ClipboardSettings.getExtras();
+        if (extras == null) {
+            return;
+        }
+        try {
+            context.getContentResolver().call(getUri(context, PATH_ITEM), METHOD_CONFIGURE,
+                    null, extras);
+        } catch (Exception e) {
+            // 保留之前保存的设置
+        }
+    }
+
+    /**
+     * 获取多格式子项首选格式以外的其他格式
+     */
+    private static String[] getRepresentations(SuperClipboard.MultiOutputAdapter adapter,
+                                               int position, String mimeType) {
+        final String[] all = adapter.getMimeTypes(position);
+        if (all == null) {
+            return new String[0];
+        }
+        final LinkedHashSet<String> types = new LinkedHashSet<>();
+        for (String type : all) {
+            if (!TextUtils.isEmpty(type) && !mimeType.equals(type)) {
+                types.add(type);
+            }
         }
-        return uris;
+        return types.toArray(new String[0]);
+    }
+
+    /**
+     * 登记延迟写入或流式子项，子项被读取时才写入；多格式子项同时登记其他格式
+     */
+    private static boolean defer(Context context, SuperClipboard.OutputAdapter adapter,
+                                 Uri[] items, String[] types, String[][] representations,
+                                 boolean streaming) {
+        final int count = items.length;
+        final String[] names = new String[count];
+        final long[] lengths = new long[count];
+        final boolean deduplicate = SuperClipboard.isDeduplicateEnabled();
+        for (int i = 0; i < count; i++) {
+            names[i] = items[i].getLastPathSegment();
+            // 流式子项不占用存储，无需预留
+            lengths[i] = !streaming && adapter instanceof SuperClipboard.SizedOutputAdapter ?
+                    ((SuperClipboard.SizedOutputAdapter) adapter).getLength(i) :
+                    ClipboardIndex.Item.SIZE_UNKNOWN;
+            DeferredHelper.put(names[i],
+                    new DeferredHelper.Entry(adapter, i, deduplicate, streaming));
+            if (representations != null && representations[i].length > 0) {
+                DeferredHelper.putRepresentations(names[i], new DeferredHelper.Representations(
+                        (SuperClipboard.MultiOutputAdapter) adapter, i, representations[i]));
+            }
+        }
+        final Bundle extras = new Bundle();
+        extras.putStringArray(EXTRA_NAMES, names);
+        extras.putStringArray(EXTRA_TYPES, types);
+        extras.putLongArray(EXTRA_LENGTHS, lengths);
+        boolean success;
+        try {
+            final Bundle result = context.getContentResolver().call(
+                    getUri(context, PATH_ITEM), METHOD_DEFER, null, extras);
+            success = result != null && result.getBoolean(EXTRA_RESULT, false);
+        } catch (Exception e) {
+            success = false;
+        }
+        if (!success) {
+            DeferredHelper.remove(names);
+        }
+        return success;
     }
 
     static void clear(Context context) {
+        CacheHelper.clear();
         context.getContentResolver().delete(getUri(context, PATH_CLEAR),
                 null, null);
     }
 
     static boolean read(Context context, SuperClipboard.InputAdapter adapter, Uri uri) {
+        return read(context, adapter, uri, false);
+    }
+
+    static boolean read(Context context, SuperClipboard.InputAdapter adapter, ClipData.Item item,
+                        boolean raw) {
+        return read(context, adapter, item, raw, null);
+    }
+
+    /**
+     * 判断是否为偏好格式
+     *
+     * @param mimeType  MIME类型
+     * @param preferred 偏好的MIME类型，为空时不限制
+     * @param first     是否仅与首个偏好格式比较
+     * @return 是偏好格式时返回true
+     */
+    static boolean isPreferred(String mimeType, String[] preferred, boolean first) {
+        if (preferred == null) {
+            return true;
+        }
+        for (String filter : preferred) {
+            if (ClipDescription.compareMimeTypes(mimeType, filter)) {
+                return true;
+            }
+            if (first) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 读取剪切板子项，内联子项直接读取，其他子项经内容提供者读取
+     *
+     * @param context   Context
+     * @param adapter   输入内容提供者
+     * @param item      剪切板子项
+     * @param raw       是否读取存储的原始数据
+     * @param mimeTypes 偏好的MIME类型，按优先级排列，为空时读取首选格式
+     * @return 读取成功时返回true
+     */
+    static boolean read(Context context, SuperClipboard.InputAdapter adapter, ClipData.Item item,
+                        boolean raw, String[] mimeTypes) {
+        if (InlineHelper.isInline(item)) {
+            return isPreferred(InlineHelper.getMimeType(item), mimeTypes, false) &&
+                    InlineHelper.read(adapter, item);
+        }
+        final Uri uri = item.getUri();
+        if (uri == null) {
+            return false;
+        }
+        if (mimeTypes == null) {
+            return read(context, adapter, uri, raw);
+        }
         final List<String> segments = uri.getPathSegments();
         if (segments == null || segments.size() != 3 || !PATH_ITEM.equals(segments.get(0))) {
             return false;
         }
-        final String mimeType = segments.get(1);
-        if (TextUtils.isEmpty(mimeType)) {
+        final String primary = segments.get(1);
+        if (isPreferred(primary, mimeTypes, true)) {
+            // 首选格式即首个偏好格式，无需查询其他格式
+            return read(context, adapter, uri, raw);
+        }
+        final ContentResolver resolver = context.getContentResolver();
+        final String[] available;
+        try {
+            available = resolver.getStreamTypes(uri, "*/*");
+        } catch (Exception e) {
             return false;
         }
-        try (final ParcelFileDescriptor descriptor =
-                     context.getContentResolver().openFileDescriptor(uri, MODE_READ)) {
-            return adapter.read(mimeType, descriptor);
+        for (String filter : mimeTypes) {
+            if (ClipDescription.compareMimeTypes(primary, filter)) {
+                return read(context, adapter, uri, raw);
+            }
+            if (available == null) {
+                continue;
+            }
+            for (String type : available) {
+                if (ClipDescription.compareMimeTypes(type, filter)) {
+                    return readTyped(resolver, adapter, uri, type);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 读取多格式子项的其他格式
+     */
+    private static boolean readTyped(ContentResolver resolver, SuperClipboard.InputAdapter adapter,
+                                     Uri uri, String mimeType) {
+        try (final AssetFileDescriptor asset =
+                     resolver.openTypedAssetFileDescriptor(uri, mimeType, null)) {
+            return asset != null && read(adapter, mimeType, asset.getParcelFileDescriptor());
         } catch (Exception e) {
             return false;
         }
     }
 
-    static boolean check(Context context, String mimeType, Uri uri) {
+    /**
+     * 读取子项
+     *
+     * @param context Context
+     * @param adapter 输入内容提供者
+     * @param uri     子项
+     * @param raw     是否读取存储的原始数据，为true时压缩子项不解压
+     * @return 读取成功时返回true
+     */
+    static boolean read(Context context, SuperClipboard.InputAdapter adapter, Uri uri,
+                        boolean raw) {
         final List<String> segments = uri.getPathSegments();
         if (segments == null || segments.size() != 3 || !PATH_ITEM.equals(segments.get(0))) {
             return false;
         }
-        if (mimeType != null &&
-                !TextUtils.equals(mimeType, Uri.decode(segments.get(1)))) {
+        final String mimeType = segments.get(1);
+        if (TextUtils.isEmpty(mimeType)) {
+            return false;
+        }
+        final Uri source = raw ?
+                uri.buildUpon().appendQueryParameter(PARAM_RAW, "1").build() : uri;
+        try (final ParcelFileDescriptor descriptor =
+                     context.getContentResolver().openFileDescriptor(source, MODE_READ)) {
+            return descriptor != null && read(adapter, mimeType, descriptor);
+        } catch (Exception e) {
             return false;
         }
-        final Uri check = getUri(context, PATH_CHECK + "/" + segments.get(2));
-        try (final Cursor cursor = context.getContentResolver().query(check,
-                null, null, null, null)) {
-            if (cursor != null) {
-                boolean result = false;
-                if (cursor.moveToFirst()) {
-                    final byte[] blob = cursor.getBlob(0);
-                    result = blob != null && blob.length == 1 && blob[0] != 0;
+    }
+
+    /**
+     * 从管道读取端读取，读取后检查写入端是否回传了错误
+     *
+     * @param adapter    输入内容提供者
+     * @param mimeType   MIME类型
+     * @param descriptor 管道读取端
+     * @return 读取成功且写入端未回传错误时返回true
+     * @throws IOException 复制文件描述符失败
+     */
+    static boolean read(SuperClipboard.InputAdapter adapter, String mimeType,
+                        ParcelFileDescriptor descriptor) throws IOException {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            return adapter.read(mimeType, descriptor);
+        }
+        // 输入内容提供者读取副本，保留原读取端以获取管道写入端回传的错误
+        try (final ParcelFileDescriptor copy = descriptor.dup()) {
+            if (!adapter.read(mimeType, copy)) {
+                return false;
+            }
+        }
+        return FileHelper.checkError(descriptor);
+    }
+
+    /**
+     * 批量查询子项信息，仅需一次跨进程调用，不读取子项数据
+     *
+     * @param context Context
+     * @param items   剪切板子项
+     * @return 子项信息，任一子项不存在时返回null
+     */
+    static ArrayList<ClipboardItemInfo> query(Context context, ClipData.Item[] items) {
+        final ArrayList<Uri> uris = new ArrayList<>();
+        for (ClipData.Item item : items) {
+            if (!InlineHelper.isInline(item)) {
+                uris.add(item.getUri());
+            }
+        }
+        final ArrayList<String> names = getNames(uris);
+        if (names.size() != uris.size()) {
+            return null;
+        }
+        final HashMap<String, ClipboardItemInfo> found = new HashMap<>();
+        if (!names.isEmpty()) {
+            final ArrayList<ClipboardItemInfo> rows = query(context,
+                    getUri(context, PATH_METADATA), names.toArray(new String[0]));
+            if (rows == null) {
+                return null;
+            }
+            for (ClipboardItemInfo row : rows) {
+                found.put(row.getName(), row);
+            }
+        }
+        final ArrayList<ClipboardItemInfo> infos = new ArrayList<>();
+        int position = 0;
+        for (ClipData.Item item : items) {
+            if (InlineHelper.isInline(item)) {
+                infos.add(new ClipboardItemInfo(null, InlineHelper.getMimeType(item),
+                        InlineHelper.getData(item).length, ClipboardItemInfo.UNKNOWN, null,
+                        null));
+                continue;
+            }
+            final ClipboardItemInfo info = found.get(names.get(position++));
+            if (info == null) {
+                return null;
+            }
+            infos.add(info);
+        }
+        return infos;
+    }
+
+    private static ArrayList<ClipboardItemInfo> query(Context context, Uri uri,
+                                                      String[] names) {
+        final Cursor cursor;
+        try {
+            cursor = context.getContentResolver().query(uri, COLUMNS_METADATA, null, names, null);
+        } catch (Exception e) {
+            return null;
+        }
+        if (cursor == null) {
+            return null;
+        }
+        final ArrayList<ClipboardItemInfo> infos = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                infos.add(new ClipboardItemInfo(cursor.getString(0), cursor.getString(1),
+                        cursor.getLong(2), cursor.getLong(3), cursor.getString(4),
+                        cursor.getString(5)));
+            }
+        } catch (Exception e) {
+            return null;
+        } finally {
+            cursor.close();
+        }
+        return infos;
+    }
+
+    /**
+     * 获取剪切板历史
+     *
+     * @param context Context
+     * @return 剪切板编号，由新到旧排列，包含当前剪切板；获取失败时返回null
+     */
+    static long[] getHistory(Context context) {
+        final Cursor cursor;
+        try {
+            cursor = context.getContentResolver().query(getUri(context, PATH_HISTORY),
+                    new String[]{COLUMN_ID}, null, null, null);
+        } catch (Exception e) {
+            return null;
+        }
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            final long[] generations = new long[cursor.getCount()];
+            int i = 0;
+            while (cursor.moveToNext() && i < generations.length) {
+                generations[i++] = cursor.getLong(0);
+            }
+            return generations;
+        } catch (Exception e) {
+            return null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * 获取历史剪切板的子项信息，仅需一次跨进程调用
+     *
+     * @param context Context
+     * @param id      剪切板编号
+     * @return 子项信息，剪切板不存在或部分子项已被淘汰时返回null
+     */
+    static ArrayList<ClipboardItemInfo> getHistory(Context context, long id) {
+        final ArrayList<ClipboardItemInfo> infos =
+                query(context, getUri(context, PATH_HISTORY + "/" + id), null);
+        return infos == null || infos.isEmpty() ? null : infos;
+    }
+
+    /**
+     * 由子项信息生成剪切板子项
+     *
+     * @param context Context
+     * @param infos   子项信息
+     * @return 剪切板子项，缺少MIME类型时返回null
+     */
+    static ClipData.Item[] getItems(Context context, List<ClipboardItemInfo> infos) {
+        final ClipData.Item[] items = new ClipData.Item[infos.size()];
+        for (int i = 0; i < items.length; i++) {
+            final ClipboardItemInfo info = infos.get(i);
+            if (TextUtils.isEmpty(info.getMimeType())) {
+                // 旧版本遗留的子项
+                return null;
+            }
+            items[i] = new ClipData.Item(getUri(context, PATH_ITEM + "/" +
+                    Uri.encode(info.getMimeType()) + "/" + info.getName()));
+        }
+        return items;
+    }
+
+    /**
+     * 批量检查子项是否存在，仅需一次跨进程调用
+     *
+     * @param context  Context
+     * @param mimeType MIME类型，为空时不检查类型
+     * @param uris     子项
+     * @param all      为true时检查是否全部存在，否则检查是否存在任一子项
+     * @return 检查结果
+     */
+    static boolean check(Context context, String mimeType, Uri[] uris, boolean all) {
+        final ArrayList<String> names = new ArrayList<>();
+        final boolean[] matched = new boolean[uris.length];
+        for (Uri uri : uris) {
+            final List<String> segments = uri.getPathSegments();
+            if (segments == null || segments.size() != 3 || !PATH_ITEM.equals(segments.get(0)) ||
+                    TextUtils.isEmpty(segments.get(2))) {
+                if (all) {
+                    return false;
                 }
-                return result;
+                continue;
             }
+            // 首选格式不符时，由内容提供者检查多格式子项的其他格式
+            matched[names.size()] = mimeType == null ||
+                    TextUtils.equals(mimeType, segments.get(1));
+            names.add(segments.get(2));
+        }
+        if (names.isEmpty()) {
+            return all;
+        }
+        final Bundle extras = new Bundle();
+        extras.putStringArray(EXTRA_NAMES, names.toArray(new String[0]));
+        extras.putBoolean(EXTRA_ALL, all);
+        extras.putString(EXTRA_TYPE, mimeType);
+        extras.putBooleanArray(EXTRA_MATCHED, Arrays.copyOf(matched, names.size()));
+        try {
+            final Bundle result = context.getContentResolver().call(
+                    getUri(context, PATH_CHECK), METHOD_CHECK, null, extras);
+            return result != null && result.getBoolean(EXTRA_RESULT, false);
+        } catch (Exception e) {
+            return false;
         }
-        return false;
     }
 
     @Override
@@ -187,18 +862,47 @@ public class ClipboardProvider extends ContentProvider {
         mMatcher.addURI(authority, PATH_CLEAR, CODE_CLEAR);
         mMatcher.addURI(authority, PATH_DELETE, CODE_DELETE);
         mMatcher.addURI(authority, PATH_CHECK + "/*", CODE_CHECK);
+        mMatcher.addURI(authority, PATH_REMOVE, CODE_REMOVE);
+        mMatcher.addURI(authority, PATH_METADATA, CODE_METADATA);
+        mMatcher.addURI(authority, PATH_HISTORY, CODE_HISTORY);
+        mMatcher.addURI(authority, PATH_HISTORY + "/#", CODE_HISTORY_CLIP);
         mDirectory = getContext().getExternalFilesDir("SuperClipboard");
         if (mDirectory == null) {
             mDirectory = new File(getContext().getFilesDir(), "SuperClipboard");
         }
         //noinspection ResultOfMethodCallIgnored
         mDirectory.mkdirs();
+        mSettings = new ClipboardSettings(getContext());
+        mIndex = new ClipboardIndex(mDirectory, mSettings);
+        TransferHelper.cleanup(mDirectory);
         return true;
     }
 
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        final int code = mMatcher.match(uri);
+        if (code == CODE_METADATA) {
+            return queryMetadata(selectionArgs);
+        }
+        if (code == CODE_HISTORY) {
+            final MatrixCursor cursor = new MatrixCursor(new String[]{COLUMN_ID});
+            if (mIndex != null) {
+                for (long generation : mIndex.getHistory()) {
+                    cursor.addRow(new Object[]{generation});
+                }
+            }
+            return cursor;
+        }
+        if (code == CODE_HISTORY_CLIP) {
+            final long generation;
+            try {
+                generation = Long.parseLong(uri.getLastPathSegment());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            return queryMetadata(mIndex == null ? null : mIndex.getHistory(generation));
+        }
         if (mMatcher.match(uri) != CODE_CHECK) {
             return null;
         }
@@ -207,7 +911,94 @@ public class ClipboardProvider extends ContentProvider {
             return null;
         }
         final String name = segments.get(1);
-        return new ClipboardCursor(mDirectory != null && new File(mDirectory, name).exists());
+        return new ClipboardCursor(mIndex != null && mIndex.contains(name));
+    }
+
+    /**
+     * 查询子项元数据，每个存在的子项一行，仅访问索引
+     * 压缩写入完成后才能确定是否压缩，写入中的子项等待写入结束
+     */
+    private Cursor queryMetadata(String[] names) {
+        final MatrixCursor cursor = new MatrixCursor(COLUMNS_METADATA);
+        if (mIndex == null || names == null) {
+            return cursor;
+        }
+        for (String name : names) {
+            final PendingWrite pending;
+            synchronized (mPending) {
+                pending = mPending.get(name);
+            }
+            if (pending != null) {
+                pending.await();
+            }
+        }
+        for (ClipboardIndex.Item item : mIndex.getSnapshot(names)) {
+            cursor.addRow(new Object[]{item.name, item.mimeType, item.getLength(),
+                    item.created, item.digest, item.codec});
+        }
+        return cursor;
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (METHOD_COMMIT.equals(method)) {
+            final Bundle bundle = new Bundle();
+            bundle.putBoolean(EXTRA_RESULT, mIndex != null && !TextUtils.isEmpty(arg) &&
+                    awaitPending(arg) && finishTransfer(arg) && mIndex.commit(arg,
+                    extras != null && extras.getBoolean(EXTRA_DEDUPLICATE, false)));
+            return bundle;
+        }
+        if (METHOD_CONFIGURE.equals(method)) {
+            if (mSettings != null) {
+                mSettings.update(extras);
+            }
+            return null;
+        }
+        if (METHOD_RESUME.equals(method)) {
+            final Bundle bundle = new Bundle();
+            bundle.putLong(EXTRA_OFFSET, mIndex == null || extras == null ? -1 : resume(arg,
+                    extras.getString(EXTRA_TRANSFER), extras.getLong(EXTRA_LENGTH, -1)));
+            return bundle;
+        }
+        if (METHOD_RECORD.equals(method)) {
+            final Bundle bundle = new Bundle();
+            bundle.putBoolean(EXTRA_RESULT, mIndex != null && extras != null && record(arg,
+                    extras.getLong(EXTRA_LENGTH, -1), extras.getLong(EXTRA_OFFSET, -1)));
+            return bundle;
+        }
+        if (METHOD_DEFER.equals(method)) {
+            final Bundle bundle = new Bundle();
+            bundle.putBoolean(EXTRA_RESULT, mIndex != null && extras != null && defer(
+                    extras.getStringArray(EXTRA_NAMES), extras.getStringArray(EXTRA_TYPES),
+                    extras.getLongArray(EXTRA_LENGTHS)));
+            return bundle;
+        }
+        if (!METHOD_CHECK.equals(method) || extras == null) {
+            return super.call(method, arg, extras);
+        }
+        final String[] names = extras.getStringArray(EXTRA_NAMES);
+        final boolean all = extras.getBoolean(EXTRA_ALL, true);
+        final String type = extras.getString(EXTRA_TYPE);
+        final boolean[] matched = extras.getBooleanArray(EXTRA_MATCHED);
+        boolean result = all;
+        if (mIndex != null && names != null) {
+            for (int i = 0; i < names.length; i++) {
+                final String name = names[i];
+                final boolean contains = mIndex.contains(name) && (type == null ||
+                        matched == null || matched.length != names.length || matched[i] ||
+                        hasRepresentation(name, type));
+                if (contains != all) {
+                    // 结果已确定
+                    result = !all;
+                    break;
+                }
+            }
+        } else {
+            result = false;
+        }
+        final Bundle bundle = new Bundle();
+        bundle.putBoolean(EXTRA_RESULT, result);
+        return bundle;
     }
 
     @Override
@@ -222,6 +1013,55 @@ public class ClipboardProvider extends ContentProvider {
         return Uri.decode(segments.get(1));
     }
 
+    @Override
+    public String[] getStreamTypes(Uri uri, String mimeTypeFilter) {
+        final String type = getType(uri);
+        if (type == null || mIndex == null) {
+            return null;
+        }
+        final String name = uri.getLastPathSegment();
+        if (TextUtils.isEmpty(name) || !mIndex.contains(name)) {
+            return null;
+        }
+        final ArrayList<String> types = new ArrayList<>();
+        if (ClipDescription.compareMimeTypes(type, mimeTypeFilter)) {
+            types.add(type);
+        }
+        final DeferredHelper.Representations representations =
+                DeferredHelper.getRepresentations(name);
+        if (representations != null) {
+            types.addAll(representations.getMimeTypes(mimeTypeFilter));
+        }
+        return types.isEmpty() ? null : types.toArray(new String[0]);
+    }
+
+    @Override
+    public AssetFileDescriptor openTypedAssetFile(Uri uri, String mimeTypeFilter, Bundle opts)
+            throws FileNotFoundException {
+        final String type = getType(uri);
+        if (type != null && mIndex != null &&
+                !ClipDescription.compareMimeTypes(type, mimeTypeFilter)) {
+            // 首选格式不符，按需写入多格式子项的其他格式
+            final String name = uri.getLastPathSegment();
+            final DeferredHelper.Representations representations =
+                    TextUtils.isEmpty(name) || !mIndex.contains(name) ? null :
+                            DeferredHelper.getRepresentations(name);
+            final DeferredHelper.Entry entry =
+                    representations == null ? null : representations.getEntry(mimeTypeFilter);
+            if (entry != null) {
+                return new AssetFileDescriptor(openStreamingRead(name, entry), 0,
+                        AssetFileDescriptor.UNKNOWN_LENGTH);
+            }
+        }
+        return super.openTypedAssetFile(uri, mimeTypeFilter, opts);
+    }
+
+    private static boolean hasRepresentation(String name, String mimeType) {
+        final DeferredHelper.Representations representations =
+                DeferredHelper.getRepresentations(name);
+        return representations != null && !representations.getMimeTypes(mimeType).isEmpty();
+    }
+
     @Override
     public Uri insert(Uri uri, ContentValues values) {
         return null;
@@ -229,24 +1069,29 @@ public class ClipboardProvider extends ContentProvider {
 
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
-        if (mDirectory == null) {
+        if (mIndex == null) {
             return 0;
         }
         if (mMatcher.match(uri) == CODE_CLEAR) {
             return clear();
         }
         if (mMatcher.match(uri) == CODE_DELETE) {
-            final HashSet<String> names = new HashSet<>(Arrays.asList(selectionArgs));
-            final File[] children = mDirectory.listFiles((dir, name) -> !names.contains(name));
-            int count = 0;
-            if (children != null) {
-                for (File child : children) {
-                    if (FileHelper.delete(child)) {
-                        count++;
-                    }
-                }
+            final HashSet<String> excluded = selectionArgs == null ? new HashSet<>() :
+                    new HashSet<>(Arrays.asList(selectionArgs));
+            DeferredHelper.retain(excluded);
+            return mIndex.removeExcept(excluded);
+        }
+        if (mMatcher.match(uri) == CODE_REMOVE) {
+            if (selectionArgs == null) {
+                return 0;
             }
-            return count;
+            DeferredHelper.remove(selectionArgs);
+            releaseTransfers(selectionArgs);
+            for (String name : selectionArgs) {
+                // 等待压缩写入结束，避免删除后再生成文件
+                awaitPending(name);
+            }
+            return mIndex.remove(selectionArgs);
         }
         return 0;
     }
@@ -261,7 +1106,7 @@ public class ClipboardProvider extends ContentProvider {
         if (mMatcher.match(uri) != CODE_ITEM) {
             return super.openFile(uri, mode);
         }
-        if (mDirectory == null) {
+        if (mIndex == null) {
             throw new FileNotFoundException("Cannot get directory.");
         }
         final List<String> segments = uri.getPathSegments();
@@ -272,24 +1117,440 @@ public class ClipboardProvider extends ContentProvider {
         if (TextUtils.isEmpty(name)) {
             throw new FileNotFoundException("Uri error at " + uri);
         }
-        final File file = new File(mDirectory, name);
         if (MODE_WRITE.equals(mode)) {
-            // 写入
-            return ParcelFileDescriptor.open(file,
-                    ParcelFileDescriptor.MODE_READ_WRITE | ParcelFileDescriptor.MODE_CREATE);
+            // 写入，子项仅可写入一次，已有子项不会被原地修改，保证已映射的内存有效
+            if (mIndex.contains(name)) {
+                throw new FileNotFoundException("Item exists at " + uri);
+            }
+            final String mimeType = Uri.decode(segments.get(1));
+            long length = ClipboardIndex.Item.SIZE_UNKNOWN;
+            try {
+                final String value = uri.getQueryParameter(PARAM_LENGTH);
+                if (value != null) {
+                    length = Long.parseLong(value);
+                }
+            } catch (NumberFormatException e) {
+                throw new FileNotFoundException("Length error at " + uri);
+            }
+            if (uri.getQueryParameter(PARAM_CODEC) != null) {
+                return openCompressedWrite(uri, name, mimeType, length);
+            }
+            final String transfer = uri.getQueryParameter(PARAM_TRANSFER);
+            if (transfer != null) {
+                return openTransferWrite(uri, name, mimeType, length, transfer);
+            }
+            if (!mIndex.add(name, mimeType, length)) {
+                throw new FileNotFoundException("Quota exceeded at " + uri);
+            }
+            try {
+                // 写入暂存文件，提交时重命名发布，崩溃时不会遗留看似完整的子项
+                return ParcelFileDescriptor.open(mIndex.getStagingFile(name),
+                        ParcelFileDescriptor.MODE_READ_WRITE | ParcelFileDescriptor.MODE_CREATE);
+            } catch (FileNotFoundException e) {
+                mIndex.remove(new String[]{name});
+                throw e;
+            }
         } else if (MODE_READ.equals(mode)) {
             // 读取
-            if (file.exists()) {
-                return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+            final DeferredHelper.Entry deferred;
+            final PendingWrite pending;
+            synchronized (mPending) {
+                deferred = DeferredHelper.take(name);
+                if (deferred != null && !deferred.streaming) {
+                    pending = new PendingWrite();
+                    mPending.put(name, pending);
+                } else {
+                    pending = mPending.get(name);
+                }
             }
-            return null;
+            if (deferred != null) {
+                return deferred.streaming ? openStreamingRead(name, deferred) :
+                        openDeferredRead(name, deferred, pending);
+            }
+            if (pending != null && !pending.await()) {
+                // 延迟写入或压缩写入失败
+                throw new FileNotFoundException("Write failed at " + uri);
+            }
+            // 等待结束后再解析文件，提交时暂存文件可能被重命名或作为重复数据删除
+            final ClipboardIndex.Item item = mIndex.get(name);
+            final ParcelFileDescriptor descriptor = item == null ? null : mIndex.open(name);
+            if (descriptor == null) {
+                return null;
+            }
+            if (item.codec != null && uri.getQueryParameter(PARAM_RAW) == null) {
+                return openDecompressedRead(descriptor, item.codec);
+            }
+            return descriptor;
         } else {
             throw new FileNotFoundException("Mode error at " + uri);
         }
     }
 
     private int clear() {
-        return FileHelper.clearDirectory(mDirectory);
+        DeferredHelper.clear();
+        synchronized (mTransfers) {
+            mTransfers.clear();
+        }
+        return mIndex.clear();
+    }
+
+    /**
+     * 打开分块写入
+     * 写入传输文件夹中的分块文件，不截断已提交的数据，提交时移为暂存文件
+     */
+    private ParcelFileDescriptor openTransferWrite(Uri uri, String name, String mimeType,
+                                                   long length, String id)
+            throws FileNotFoundException {
+        synchronized (mTransfers) {
+            if (!id.equals(mTransfers.get(name))) {
+                throw new FileNotFoundException("Transfer not resumed at " + uri);
+            }
+        }
+        if (!mIndex.add(name, mimeType, length)) {
+            releaseTransfers(new String[]{name});
+            throw new FileNotFoundException("Quota exceeded at " + uri);
+        }
+        try {
+            return ParcelFileDescriptor.open(TransferHelper.getPartFile(mDirectory, id),
+                    ParcelFileDescriptor.MODE_READ_WRITE | ParcelFileDescriptor.MODE_CREATE);
+        } catch (FileNotFoundException e) {
+            releaseTransfers(new String[]{name});
+            mIndex.remove(new String[]{name});
+            throw e;
+        }
+    }
+
+    /**
+     * 准备续传，同一数据同时仅可有一个分块写入
+     *
+     * @return 已提交的偏移，无法续传时返回-1
+     */
+    private long resume(String name, String id, long length) {
+        if (TextUtils.isEmpty(name) || !TransferHelper.isId(id) || length < 0) {
+            return -1;
+        }
+        synchronized (mTransfers) {
+            if (mTransfers.containsKey(name) || mTransfers.containsValue(id)) {
+                return -1;
+            }
+            final long offset = TransferHelper.resume(mDirectory, id, length);
+            if (offset >= 0) {
+                mTransfers.put(name, id);
+            }
+            return offset;
+        }
+    }
+
+    private boolean record(String name, long length, long offset) {
+        final String id;
+        synchronized (mTransfers) {
+            id = mTransfers.get(name);
+        }
+        return id != null && length >= 0 && offset >= 0 && offset <= length &&
+                TransferHelper.record(mDirectory, id, length, offset);
+    }
+
+    /**
+     * 完成分块写入，分块文件移为暂存文件；非分块写入的子项直接返回true
+     */
+    private boolean finishTransfer(String name) {
+        final String id;
+        synchronized (mTransfers) {
+            id = mTransfers.remove(name);
+        }
+        return id == null || TransferHelper.finish(mDirectory, id, mIndex.getStagingFile(name));
+    }
+
+    private void releaseTransfers(String[] names) {
+        synchronized (mTransfers) {
+            for (String name : names) {
+                mTransfers.remove(name);
+            }
+        }
+    }
+
+    private boolean defer(String[] names, String[] types, long[] lengths) {
+        if (names == null || types == null || lengths == null ||
+                names.length != types.length || names.length != lengths.length) {
+            return false;
+        }
+        for (String name : names) {
+            if (!DeferredHelper.contains(name)) {
+                // 在其他进程登记，本进程无法写入，发布后将无法读取
+                return false;
+            }
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (TextUtils.isEmpty(names[i]) || mIndex.contains(names[i]) ||
+                    !mIndex.add(names[i], types[i], lengths[i])) {
+                // 回滚已登记的子项
+                mIndex.remove(Arrays.copyOf(names, i));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 打开延迟写入子项
+     * 由管道线程执行写入，数据同时写入文件及返回的管道，写入完成后提交，之后的读取直接读取文件
+     */
+    private ParcelFileDescriptor openDeferredRead(String name, DeferredHelper.Entry entry,
+                                                  PendingWrite pending)
+            throws FileNotFoundException {
+        final ParcelFileDescriptor[] source;
+        final ParcelFileDescriptor[] target;
+        try {
+            source = FileHelper.createPipe();
+        } catch (IOException e) {
+            finishDeferred(name, entry, pending, false);
+            throw new FileNotFoundException("Cannot create pipe for " + name);
+        }
+        try {
+            target = FileHelper.createPipe();
+        } catch (IOException e) {
+            FileHelper.closePipe(source[0], null);
+            FileHelper.closePipe(source[1], null);
+            finishDeferred(name, entry, pending, false);
+            throw new FileNotFoundException("Cannot create pipe for " + name);
+        }
+        try {
+            final Future<Boolean> producer =
+                    ExecutorHelper.getPipeExecutor().submit(() -> entry.write(source[1]));
+            ExecutorHelper.getPipeExecutor().execute(() -> finishDeferred(name, entry, pending,
+                    materialize(name, entry, source[0], target[1], producer)));
+        } catch (RejectedExecutionException e) {
+            FileHelper.closePipe(source[0], null);
+            FileHelper.closePipe(source[1], null);
+            FileHelper.closePipe(target[0], null);
+            FileHelper.closePipe(target[1], null);
+            finishDeferred(name, entry, pending, false);
+            throw new FileNotFoundException("Cannot start pipe for " + name);
+        }
+        return target[0];
+    }
+
+    /**
+     * 打开流式子项
+     * 由管道线程写入管道，管道缓冲写满时写入阻塞，写入速度受读取速度限制；写入失败时向读取端回传错误
+     */
+    private ParcelFileDescriptor openStreamingRead(String name, DeferredHelper.Entry entry)
+            throws FileNotFoundException {
+        final ParcelFileDescriptor[] pipe;
+        try {
+            pipe = FileHelper.createPipe();
+        } catch (IOException e) {
+            throw new FileNotFoundException("Cannot create pipe for " + name);
+        }
+        try {
+            ExecutorHelper.getPipeExecutor().execute(() -> {
+                boolean success;
+                try {
+                    // 输出内容提供者写入副本，保留原写入端以回传错误
+                    success = entry.write(pipe[1].dup());
+                } catch (IOException e) {
+                    success = false;
+                }
+                FileHelper.closePipe(pipe[1], success ? null : "Streaming write failed");
+            });
+        } catch (RejectedExecutionException e) {
+            FileHelper.closePipe(pipe[0], null);
+            FileHelper.closePipe(pipe[1], null);
+            throw new FileNotFoundException("Cannot start pipe for " + name);
+        }
+        return pipe[0];
+    }
+
+    private boolean materialize(String name, DeferredHelper.Entry entry,
+                                ParcelFileDescriptor source, ParcelFileDescriptor target,
+                                Future<Boolean> producer) {
+        boolean success;
+        OutputStream reader = new FileOutputStream(target.getFileDescriptor());
+        try (final InputStream input = new ParcelFileDescriptor.AutoCloseInputStream(source);
+             final OutputStream output = new FileOutputStream(mIndex.getStagingFile(name))) {
+            final byte[] buffer = BufferHelper.obtain();
+            try {
+                int count;
+                while ((count = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, count);
+                    if (reader != null) {
+                        try {
+                            reader.write(buffer, 0, count);
+                        } catch (IOException e) {
+                            // 读取方已关闭，继续写入文件供之后读取
+                            reader = null;
+                        }
+                    }
+                }
+            } finally {
+                BufferHelper.recycle(buffer);
+            }
+            success = producer.get();
+        } catch (Exception e) {
+            success = false;
+        }
+        success = success && mIndex.commit(name, entry.deduplicate);
+        FileHelper.closePipe(target, success ? null : "Deferred write failed");
+        return success;
+    }
+
+    private void finishDeferred(String name, DeferredHelper.Entry entry, PendingWrite pending,
+                                boolean success) {
+        synchronized (mPending) {
+            if (!success && mIndex.contains(name)) {
+                // 重新登记，再次读取时重试
+                DeferredHelper.put(name, entry);
+            }
+            if (mPending.get(name) == pending) {
+                mPending.remove(name);
+            }
+        }
+        pending.finish(success);
+    }
+
+    private boolean awaitPending(String name) {
+        final PendingWrite pending;
+        synchronized (mPending) {
+            pending = mPending.remove(name);
+        }
+        return pending == null || pending.await();
+    }
+
+    /**
+     * 打开压缩写入
+     * 返回管道写入端，由管道线程读取数据，达到阈值时边压缩边写入文件，否则原样写入
+     */
+    private ParcelFileDescriptor openCompressedWrite(Uri uri, String name, String mimeType,
+                                                     long length)
+            throws FileNotFoundException {
+        final String codec = uri.getQueryParameter(PARAM_CODEC);
+        final int level;
+        final long threshold;
+        try {
+            level = Integer.parseInt(uri.getQueryParameter(PARAM_LEVEL));
+            threshold = Long.parseLong(uri.getQueryParameter(PARAM_THRESHOLD));
+        } catch (Exception e) {
+            throw new FileNotFoundException("Codec error at " + uri);
+        }
+        if (!CompressionHelper.isSupported(codec, level) ||
+                threshold < 0 || threshold > CompressionHelper.MAX_THRESHOLD) {
+            throw new FileNotFoundException("Codec error at " + uri);
+        }
+        final ParcelFileDescriptor[] pipe;
+        try {
+            pipe = FileHelper.createPipe();
+        } catch (IOException e) {
+            throw new FileNotFoundException("Cannot create pipe at " + uri);
+        }
+        if (!mIndex.add(name, mimeType, length)) {
+            FileHelper.closePipe(pipe[0], null);
+            FileHelper.closePipe(pipe[1], null);
+            throw new FileNotFoundException("Quota exceeded at " + uri);
+        }
+        final PendingWrite pending = new PendingWrite();
+        synchronized (mPending) {
+            mPending.put(name, pending);
+        }
+        try {
+            ExecutorHelper.getPipeExecutor().execute(() -> pending.finish(
+                    compress(pipe[0], name, codec, level, (int) threshold)));
+        } catch (RejectedExecutionException e) {
+            pending.finish(false);
+            FileHelper.closePipe(pipe[0], null);
+            FileHelper.closePipe(pipe[1], null);
+            throw new FileNotFoundException("Cannot start pipe at " + uri);
+        }
+        return pipe[1];
+    }
+
+    private boolean compress(ParcelFileDescriptor source, String name, String codec, int level,
+                             int threshold) {
+        try (final InputStream input = new ParcelFileDescriptor.AutoCloseInputStream(source)) {
+            final byte[] head = new byte[threshold];
+            int length = 0;
+            int count = 0;
+            while (length < threshold &&
+                    (count = input.read(head, length, threshold - length)) != -1) {
+                length += count;
+            }
+            if (count == -1) {
+                // 小于阈值，原样写入
+                try (final FileOutputStream output =
+                             new FileOutputStream(mIndex.getStagingFile(name))) {
+                    output.write(head, 0, length);
+                }
+                return true;
+            }
+            final File file = mIndex.setCodec(name, codec, level);
+            if (file == null) {
+                return false;
+            }
+            final long total;
+            try (final OutputStream output = CompressionHelper.compress(
+                    new FileOutputStream(file), codec, level)) {
+                output.write(head, 0, length);
+                total = length + FileHelper.copy(input, output);
+            }
+            // 记录原始大小，供查询元数据
+            mIndex.setLength(name, total);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * 打开解压读取
+     * 返回管道读取端，由管道线程边解压边写入
+     */
+    private ParcelFileDescriptor openDecompressedRead(ParcelFileDescriptor file, String codec)
+            throws FileNotFoundException {
+        final InputStream input = new ParcelFileDescriptor.AutoCloseInputStream(file);
+        final ParcelFileDescriptor[] pipe;
+        try {
+            pipe = FileHelper.createPipe();
+        } catch (IOException e) {
+            FileHelper.closeQuietly(input);
+            throw new FileNotFoundException("Cannot create pipe for " + codec);
+        }
+        try {
+            ExecutorHelper.getPipeExecutor().execute(() -> {
+                String error = null;
+                try (final InputStream source = CompressionHelper.decompress(input, codec)) {
+                    FileHelper.copy(source, new FileOutputStream(pipe[1].getFileDescriptor()));
+                } catch (Exception e) {
+                    error = "Decompress failed: " + e.getMessage();
+                }
+                FileHelper.closePipe(pipe[1], error);
+            });
+        } catch (RejectedExecutionException e) {
+            FileHelper.closeQuietly(input);
+            FileHelper.closePipe(pipe[0], null);
+            FileHelper.closePipe(pipe[1], null);
+            throw new FileNotFoundException("Cannot start pipe for " + codec);
+        }
+        return pipe[0];
+    }
+
+    private static final class PendingWrite {
+
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+        private volatile boolean mSuccess;
+
+        void finish(boolean success) {
+            mSuccess = success;
+            mLatch.countDown();
+        }
+
+        boolean await() {
+            try {
+                mLatch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            return mSuccess;
+        }
     }
 
     private static class ClipboardCursor extends AbstractCursor {
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2021 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.am.clipboard;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 存储设置
+ * 设置方法仅作用于调用进程，设置剪切板时随请求传递至内容提供者并保存；
+ * 内容提供者冷启动或由未设置的进程写入时，使用最近一次保存的设置
+ */
+class ClipboardSettings {
+
+    static final String KEY_QUOTA_BYTES = "quota_bytes";
+    static final String KEY_QUOTA_ITEMS = "quota_items";
+    static final String KEY_DURABILITY = "durability";
+    static final String KEY_HISTORY_SIZE = "history_size";
+    private static final String NAME = "com.am.clipboard.settings";
+    private static final HashMap<String, Long> CHANGES = new HashMap<>();// 本进程设置过的值
+    private final SharedPreferences mPreferences;
+    private volatile long mQuotaBytes;
+    private volatile int mQuotaItems;
+    private volatile int mDurability;
+    private volatile int mHistorySize;
+
+    ClipboardSettings(Context context) {
+        this(context.getSharedPreferences(NAME, Context.MODE_PRIVATE));
+    }
+
+    ClipboardSettings(SharedPreferences preferences) {
+        mPreferences = preferences;
+        load();
+    }
+
+    /**
+     * 记录本进程的设置，之后设置剪切板时传递至内容提供者
+     *
+     * @param key   键
+     * @param value 值
+     */
+    static void put(String key, long value) {
+        synchronized (CHANGES) {
+            CHANGES.put(key, value);
+        }
+    }
+
+    /**
+     * 获取本进程设置过的值
+     *
+     * @return 附加数据，未设置过时返回null
+     */
+    static Bundle getExtras() {
+        synchronized (CHANGES) {
+            if (CHANGES.isEmpty()) {
+                return null;
+            }
+            final Bundle extras = new Bundle();
+            for (Map.Entry<String, Long> entry : CHANGES.entrySet()) {
+                extras.putLong(entry.getKey(), entry.getValue());
+            }
+            return extras;
+        }
+    }
+
+    private void load() {
+        mQuotaBytes = mPreferences.getLong(KEY_QUOTA_BYTES, 0);
+        mQuotaItems = (int) mPreferences.getLong(KEY_QUOTA_ITEMS, 0);
+        mDurability = (int) mPreferences.getLong(KEY_DURABILITY,
+                SuperClipboard.DURABILITY_NONE);
+        mHistorySize = (int) mPreferences.getLong(KEY_HISTORY_SIZE, 0);
+    }
+
+    /**
+     * 更新并保存设置，仅更新附加数据中包含的值
+     *
+     * @param extras 附加数据
+     */
+    synchronized void update(Bundle extras) {
+        if (extras == null) {
+            return;
+        }
+        SharedPreferences.Editor editor = null;
+        for (String key : new String[]{KEY_QUOTA_BYTES, KEY_QUOTA_ITEMS, KEY_DURABILITY,
+                KEY_HISTORY_SIZE}) {
+            if (!extras.containsKey(key)) {
+                continue;
+            }
+            final long value = extras.getLong(key);
+            if (mPreferences.contains(key) && mPreferences.getLong(key, 0) == value) {
+                continue;
+            }
+            if (editor == null) {
+                editor = mPreferences.edit();
+            }
+            editor.putLong(key, value);
+        }
+        if (editor != null) {
+            editor.apply();
+            load();
+        }
+    }
+
+    /**
+     * 获取最大存储大小
+     *
+     * @return 最大存储大小，不大于0时不限制
+     */
+    long getQuotaBytes() {
+        return mQuotaBytes;
+    }
+
+    /**
+     * 获取最大子项个数
+     *
+     * @return 最大子项个数，不大于0时不限制
+     */
+    int getQuotaItems() {
+        return mQuotaItems;
+    }
+
+    /**
+     * 获取持久化模式
+     *
+     * @return 持久化模式
+     */
+    int getDurability() {
+        return mDurability;
+    }
+
+    /**
+     * 获取剪切板历史容量
+     *
+     * @return 保留的历史剪切板个数
+     */
+    int getHistorySize() {
+        return mHistorySize;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2021 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.am.clipboard;
+
+import java.util.HashSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 剪切板异步任务
+ */
+public final class ClipboardTask {
+
+    private static final int STATE_RUNNING = 0;
+    private static final int STATE_COMMITTED = 1;
+    private static final int STATE_CANCELLED = 2;
+    private static final int STATE_DONE = 3;
+    private final HashSet<Thread> mWorkers = new HashSet<>();// 并行处理子项的线程
+    private int mState = STATE_RUNNING;
+    private Thread mThread;
+
+    private ClipboardTask() {
+    }
+
+    /**
+     * 执行异步任务
+     *
+     * @param operation 操作
+     * @param executor  回调执行器，为空时在I/O线程回调
+     * @param callback  回调
+     * @return 任务
+     */
+    static <T> ClipboardTask execute(Operation<T> operation, Executor executor,
+                                     SuperClipboard.Callback<T> callback) {
+        final ClipboardTask task = new ClipboardTask();
+        final Runnable runnable = () -> {
+            T result = null;
+            if (task.start()) {
+                try {
+                    result = operation.run(task);
+                } catch (Throwable t) {
+                    // do nothing
+                    t.printStackTrace();
+                }
+            }
+            final boolean done = task.finish();
+            if (callback == null) {
+                return;
+            }
+            final T value = result;
+            final Runnable notify = done ?
+                    () -> callback.onResult(value) : callback::onCancelled;
+            if (executor == null) {
+                notify.run();
+            } else {
+                executor.execute(notify);
+            }
+        };
+        try {
+            ExecutorHelper.getIOExecutor().execute(runnable);
+        } catch (RejectedExecutionException e) {
+            task.cancel();
+            runnable.run();
+        }
+        return task;
+    }
+
+    private synchronized boolean start() {
+        if (mState == STATE_CANCELLED) {
+            return false;
+        }
+        mThread = Thread.currentThread();
+        return true;
+    }
+
+    private synchronized boolean finish() {
+        mThread = null;
+        // 清除取消时可能设置的中断状态，避免影响后续任务
+        //noinspection ResultOfMethodCallIgnored
+        Thread.interrupted();
+        if (mState == STATE_CANCELLED) {
+            return false;
+        }
+        mState = STATE_DONE;
+        return true;
+    }
+
+    /**
+     * 登记当前线程为并行处理子项的线程，取消时一并中断
+     *
+     * @return 任务已取消时返回false
+     */
+    synchronized boolean attach() {
+        if (mState == STATE_CANCELLED) {
+            return false;
+        }
+        mWorkers.add(Thread.currentThread());
+        return true;
+    }
+
+    /**
+     * 注销当前线程，线程归还线程池前调用
+     */
+    synchronized void detach() {
+        mWorkers.remove(Thread.currentThread());
+        // 清除取消时可能设置的中断状态，避免影响线程池的后续任务
+        //noinspection ResultOfMethodCallIgnored
+        Thread.interrupted();
+    }
+
+    /**
+     * 提交，提交后任务无法取消
+     *
+     * @return 任务已取消时返回false
+     */
+    synchronized boolean commit() {
+        if (mState == STATE_CANCELLED) {
+            return false;
+        }
+        mState = STATE_COMMITTED;
+        return true;
+    }
+
+    /**
+     * 取消任务
+     * 未开始的子项将不再写入或读取，并行处理中的子项将被中断，已写入的子项将被删除
+     *
+     * @return 取消成功时返回true，任务已提交或已完成时返回false
+     */
+    public synchronized boolean cancel() {
+        if (mState != STATE_RUNNING) {
+            return false;
+        }
+        mState = STATE_CANCELLED;
+        if (mThread != null) {
+            // 中断正在进行的通道传输
+            mThread.interrupt();
+        }
+        for (Thread worker : mWorkers) {
+            worker.interrupt();
+        }
+        return true;
+    }
+
+    /**
+     * 判断任务是否已取消
+     *
+     * @return 已取消时返回true
+     */
+    public synchronized boolean isCancelled() {
+        return mState == STATE_CANCELLED;
+    }
+
+    /**
+     * 判断任务是否已完成
+     *
+     * @return 已完成时返回true
+     */
+    public synchronized boolean isDone() {
+        return mState == STATE_DONE;
+    }
+
+    /**
+     * 操作
+     */
+    interface Operation<T> {
+
+        /**
+         * 执行
+         *
+         * @param task 任务
+         * @return 结果
+         */
+        T run(ClipboardTask task);
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2021 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.am.clipboard;
+
+import android.os.Parcel;
+import android.os.ParcelFileDescriptor;
+import android.os.Parcelable;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 编解码器辅助
+ */
+class CodecHelper {
+
+    private static final ConcurrentHashMap<String, SuperClipboard.Codec<?>> CODECS =
+            new ConcurrentHashMap<>();
+
+    private CodecHelper() {
+        //no instance
+    }
+
+    /**
+     * 注册编解码器
+     *
+     * @param mimeType MIME类型
+     * @param codec    编解码器，为空时取消注册
+     */
+    static void register(String mimeType, SuperClipboard.Codec<?> codec) {
+        if (codec == null) {
+            CODECS.remove(mimeType);
+        } else {
+            CODECS.put(mimeType, codec);
+        }
+    }
+
+    /**
+     * 获取已注册的编解码器
+     *
+     * @param mimeType MIME类型
+     * @return 编解码器，未注册时返回null
+     */
+    static SuperClipboard.Codec<?> get(String mimeType) {
+        return mimeType == null ? null : CODECS.get(mimeType);
+    }
+
+    /**
+     * 编码
+     *
+     * @param codec  编解码器
+     * @param item   子项
+     * @param stream 输出流，编码完成后关闭
+     * @throws IOException 编码失败
+     */
+    static <T> void encode(SuperClipboard.Codec<? super T> codec, T item,
+                           OutputStream stream) throws IOException {
+        try (final DataOutputStream output = new DataOutputStream(
+                BufferHelper.buffer(stream))) {
+            codec.encode(item, output);
+        }
+    }
+
+    /**
+     * 解码
+     *
+     * @param codec  编解码器
+     * @param stream 输入流，解码完成后关闭
+     * @return 子项
+     * @throws IOException 解码失败
+     */
+    static <T> T decode(SuperClipboard.Codec<T> codec, InputStream stream) throws IOException {
+        try (final DataInputStream input = new DataInputStream(
+                BufferHelper.buffer(stream))) {
+            return codec.decode(input);
+        }
+    }
+
+    public static class CodecOutputAdapter<T> implements SuperClipboard.OutputAdapter,
+            CacheHelper.CacheableOutputAdapter, InlineHelper.InlineOutputAdapter {
+
+        private final String mMimeType;
+        private final SuperClipboard.Codec<? super T> mCodec;
+        private final List<T> mItems;
+        private final Object[] mCaches;
+
+        public CodecOutputAdapter(String mimeType, SuperClipboard.Codec<? super T> codec,
+                                  List<T> items) {
+            mMimeType = mimeType;
+            mCodec = codec;
+            mItems = items;
+            mCaches = new Object[items.size()];
+        }
+
+        @Override
+        public int getCount() {
+            return mItems.size();
+        }
+
+        @Override
+        public String getMimeType(int position) {
+            return mMimeType;
+        }
+
+        @Override
+        public boolean write(int position, ParcelFileDescriptor descriptor) {
+            final T item = mItems.get(position);
+            final OutputStream output = new ParcelFileDescriptor.AutoCloseOutputStream(descriptor);
+            final boolean immutable = CacheHelper.isImmutable(item);
+            final CacheHelper.CaptureOutputStream capture =
+                    immutable ? null : new CacheHelper.CaptureOutputStream(output);
+            try {
+                encode(mCodec, item, immutable ? output : capture);
+            } catch (Exception e) {
+                return false;
+            }
+            mCaches[position] = immutable ? item : capture.toByteArray();
+            return true;
+        }
+
+        @Override
+        public Object getCache(int position) {
+            return mCaches[position];
+        }
+
+        @Override
+        public byte[] toByteArray(int position, int limit) {
+            final InlineHelper.LimitedOutputStream stream =
+                    new InlineHelper.LimitedOutputStream(limit);
+            try {
+                encode(mCodec, mItems.get(position), stream);
+            } catch (Exception e) {
+                return null;
+            }
+            return stream.toByteArray();
+        }
+    }
+
+    public static class CodecInputAdapter implements SuperClipboard.ParallelInputAdapter,
+            CacheHelper.CacheableInputAdapter {
+
+        private final SuperClipboard.Codec<?> mCodec;
+        private final ArrayList<Object> mItems = new ArrayList<>();
+
+        /**
+         * 构造
+         *
+         * @param codec 编解码器，为空时按子项MIME类型使用已注册的编解码器
+         */
+        public CodecInputAdapter(SuperClipboard.Codec<?> codec) {
+            mCodec = codec;
+        }
+
+        private Object decode(String mimeType, InputStream input) throws IOException {
+            final SuperClipboard.Codec<?> codec = mCodec != null ? mCodec : get(mimeType);
+            if (codec == null) {
+                input.close();
+                throw new IOException("No codec for " + mimeType);
+            }
+            return CodecHelper.decode(codec, input);
+        }
+
+        private Object decode(String mimeType, ParcelFileDescriptor descriptor)
+                throws IOException {
+            return decode(mimeType, new ParcelFileDescriptor.AutoCloseInputStream(descriptor));
+        }
+
+        @Override
+        public boolean read(String mimeType, ParcelFileDescriptor descriptor) {
+            try {
+                final Object item = decode(mimeType, descriptor);
+                synchronized (mItems) {
+                    mItems.add(item);
+                }
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void onStart(int count) {
+            synchronized (mItems) {
+                mItems.clear();
+                mItems.addAll(Collections.nCopies(count, null));
+            }
+        }
+
+        @Override
+        public boolean read(int position, String mimeType, ParcelFileDescriptor descriptor) {
+            try {
+                final Object item = decode(mimeType, descriptor);
+                synchronized (mItems) {
+                    mItems.set(position, item);
+                }
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        @Override
+        public boolean readCache(int position, String mimeType, Object value) {
+            try {
+                final Object item = value instanceof byte[] ?
+                        decode(mimeType, new ByteArrayInputStream((byte[]) value)) : value;
+                synchronized (mItems) {
+                    mItems.set(position, item);
+                }
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        public ArrayList<Object> getItems() {
+            synchronized (mItems) {
+                return new ArrayList<>(mItems);
+            }
+        }
+    }
+
+    /**
+     * Parcelable编解码器
+     * Parcel数据格式与系统版本相关，仅适用于同一设备上的复制粘贴
+     */
+    static class ParcelableCodec<T extends Parcelable> implements SuperClipboard.Codec<T> {
+
+        private final Parcelable.Creator<T> mCreator;
+
+        ParcelableCodec(Parcelable.Creator<T> creator) {
+            mCreator = creator;
+        }
+
+        @Override
+        public void encode(T item, DataOutput output) throws IOException {
+            final Parcel parcel = Parcel.obtain();
+            try {
+                item.writeToParcel(parcel, 0);
+                final byte[] data = parcel.marshall();
+                output.writeInt(data.length);
+                output.write(data);
+            } finally {
+                parcel.recycle();
+            }
+        }
+
+        @Override
+        public T decode(DataInput input) throws IOException {
+            final int length = input.readInt();
+            if (length < 0) {
+                throw new IOException("Invalid length: " + length);
+            }
+            final byte[] data = new byte[length];
+            input.readFully(data);
+            final Parcel parcel = Parcel.obtain();
+            try {
+                parcel.unmarshall(data, 0, length);
+                parcel.setDataPosition(0);
+                return mCreator.createFromParcel(parcel);
+            } finally {
+                parcel.recycle();
+            }
+        }
+    }
+}
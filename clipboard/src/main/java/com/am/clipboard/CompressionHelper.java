@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2021 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.am.clipboard;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 压缩辅助
+ */
+class CompressionHelper {
+
+    static final String CODEC_DEFLATE = "deflate";
+    static final long MAX_THRESHOLD = 1024 * 1024;
+    private static volatile Config sConfig;
+
+    private CompressionHelper() {
+        //no instance
+    }
+
+    /**
+     * 设置压缩配置
+     *
+     * @param config 压缩配置，为空时关闭压缩
+     */
+    static void setConfig(Config config) {
+        sConfig = config;
+    }
+
+    /**
+     * 获取适用于该MIME类型的压缩配置
+     *
+     * @param mimeType MIME类型
+     * @return 压缩配置，不压缩时返回null
+     */
+    static Config getConfig(String mimeType) {
+        final Config config = sConfig;
+        if (config == null || (config.mimeTypes != null && !config.mimeTypes.contains(mimeType))) {
+            return null;
+        }
+        return config;
+    }
+
+    /**
+     * 判断是否为支持的压缩格式
+     *
+     * @param codec 压缩格式
+     * @param level 压缩等级
+     * @return 支持时返回true
+     */
+    static boolean isSupported(String codec, int level) {
+        return CODEC_DEFLATE.equals(codec) &&
+                level >= Deflater.BEST_SPEED && level <= Deflater.BEST_COMPRESSION;
+    }
+
+    /**
+     * 包装压缩输出流
+     *
+     * @param output 输出流
+     * @param codec  压缩格式
+     * @param level  压缩等级
+     * @return 压缩输出流
+     */
+    static OutputStream compress(OutputStream output, String codec, int level) {
+        if (!CODEC_DEFLATE.equals(codec)) {
+            throw new IllegalArgumentException("Unsupported codec: " + codec);
+        }
+        return new PooledDeflaterOutputStream(output, new Deflater(level));
+    }
+
+    /**
+     * 包装解压输入流
+     *
+     * @param input 输入流
+     * @param codec 压缩格式
+     * @return 解压输入流
+     */
+    static InputStream decompress(InputStream input, String codec) {
+        if (!CODEC_DEFLATE.equals(codec)) {
+            throw new IllegalArgumentException("Unsupported codec: " + codec);
+        }
+        return new PooledInflaterInputStream(input, new Inflater());
+    }
+
+    private static final class PooledDeflaterOutputStream extends DeflaterOutputStream {
+
+        private boolean mClosed;
+
+        PooledDeflaterOutputStream(OutputStream output, Deflater deflater) {
+            super(output, deflater, 1);
+            buf = BufferHelper.obtain();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            try {
+                super.close();
+            } finally {
+                def.end();
+                BufferHelper.recycle(buf);
+            }
+        }
+    }
+
+    private static final class PooledInflaterInputStream extends InflaterInputStream {
+
+        private boolean mClosed;
+
+        PooledInflaterInputStream(InputStream input, Inflater inflater) {
+            super(input, inflater, 1);
+            buf = BufferHelper.obtain();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            try {
+                super.close();
+            } finally {
+                inf.end();
+                BufferHelper.recycle(buf);
+            }
+        }
+    }
+
+    /**
+     * 压缩配置
+     */
+    static final class Config {
+
+        final String codec;
+        final int level;
+        final long threshold;
+        final HashSet<String> mimeTypes;
+
+        Config(String codec, int level, long threshold, String[] mimeTypes) {
+            this.codec = codec;
+            this.level = level;
+            this.threshold = Math.max(0, Math.min(threshold, MAX_THRESHOLD));
+            this.mimeTypes = mimeTypes == null || mimeTypes.length <= 0 ?
+                    null : new HashSet<>(Arrays.asList(mimeTypes));
+        }
+    }
+}
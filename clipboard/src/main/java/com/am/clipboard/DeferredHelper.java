@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2021 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.am.clipboard;
+
+import android.content.ClipDescription;
+import android.os.ParcelFileDescriptor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 延迟写入辅助
+ * 登记延迟写入及流式子项的输出内容提供者，延迟写入子项首次被读取时才写入，
+ * 流式子项每次被读取时均重新写入管道；多格式子项的其他格式按需写入管道；仅在当前进程内有效
+ */
+class DeferredHelper {
+
+    private static final HashMap<String, Entry> ENTRIES = new HashMap<>();
+    private static final HashMap<String, Representations> REPRESENTATIONS = new HashMap<>();
+
+    private DeferredHelper() {
+        //no instance
+    }
+
+    /**
+     * 登记子项
+     *
+     * @param name  子项名称
+     * @param entry 延迟写入项
+     */
+    static void put(String name, Entry entry) {
+        synchronized (ENTRIES) {
+            ENTRIES.put(name, entry);
+        }
+    }
+
+    /**
+     * 取出子项，延迟写入项取出后不再登记，流式项仍保留
+     *
+     * @param name 子项名称
+     * @return 延迟写入项，未登记时返回null
+     */
+    static Entry take(String name) {
+        synchronized (ENTRIES) {
+            final Entry entry = ENTRIES.get(name);
+            if (entry != null && !entry.streaming) {
+                ENTRIES.remove(name);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * 判断子项是否已登记
+     * 登记表仅存在于设置剪切板的进程，内容提供者以此判断是否与其在同一进程
+     *
+     * @param name 子项名称
+     * @return 已登记时返回true
+     */
+    static boolean contains(String name) {
+        synchronized (ENTRIES) {
+            return ENTRIES.containsKey(name);
+        }
+    }
+
+    /**
+     * 登记子项的其他格式
+     *
+     * @param name            子项名称
+     * @param representations 其他格式
+     */
+    static void putRepresentations(String name, Representations representations) {
+        synchronized (ENTRIES) {
+            REPRESENTATIONS.put(name, representations);
+        }
+    }
+
+    /**
+     * 获取子项的其他格式
+     *
+     * @param name 子项名称
+     * @return 其他格式，未登记时返回null
+     */
+    static Representations getRepresentations(String name) {
+        synchronized (ENTRIES) {
+            return REPRESENTATIONS.get(name);
+        }
+    }
+
+    /**
+     * 移除子项
+     *
+     * @param names 子项名称
+     */
+    static void remove(String[] names) {
+        synchronized (ENTRIES) {
+            for (String name : names) {
+                ENTRIES.remove(name);
+                REPRESENTATIONS.remove(name);
+            }
+        }
+    }
+
+    /**
+     * 仅保留指定子项
+     *
+     * @param names 保留的子项名称
+     */
+    static void retain(Set<String> names) {
+        synchronized (ENTRIES) {
+            ENTRIES.keySet().retainAll(names);
+            REPRESENTATIONS.keySet().retainAll(names);
+        }
+    }
+
+    /**
+     * 清空
+     */
+    static void clear() {
+        synchronized (ENTRIES) {
+            ENTRIES.clear();
+            REPRESENTATIONS.clear();
+        }
+    }
+
+    /**
+     * 延迟写入项
+     */
+    static final class Entry {
+
+        private final SuperClipboard.OutputAdapter mAdapter;
+        private final int mPosition;
+        private final String mMimeType;// 多格式子项的其他格式，为空时写入首选格式
+        final boolean deduplicate;
+        final boolean streaming;// 流式子项，不写入文件
+
+        Entry(SuperClipboard.OutputAdapter adapter, int position, boolean deduplicate,
+              boolean streaming) {
+            this(adapter, position, null, deduplicate, streaming);
+        }
+
+        private Entry(SuperClipboard.OutputAdapter adapter, int position, String mimeType,
+                      boolean deduplicate, boolean streaming) {
+            mAdapter = adapter;
+            mPosition = position;
+            mMimeType = mimeType;
+            this.deduplicate = deduplicate;
+            this.streaming = streaming;
+        }
+
+        /**
+         * 写入
+         *
+         * @param descriptor 文件，写入完成后关闭
+         * @return 写入成功时返回true
+         */
+        boolean write(ParcelFileDescriptor descriptor) {
+            try {
+                if (mMimeType != null) {
+                    return ((SuperClipboard.MultiOutputAdapter) mAdapter)
+                            .write(mPosition, mMimeType, descriptor);
+                }
+                return mAdapter.write(mPosition, descriptor);
+            } catch (Exception e) {
+                return false;
+            } finally {
+                FileHelper.closeQuietly(descriptor);
+            }
+        }
+    }
+
+    /**
+     * 多格式子项的其他格式
+     * 首选格式按延迟写入或流式子项处理，其他格式不写入文件，每次被读取时均重新写入管道
+     */
+    static final class Representations {
+
+        private final SuperClipboard.MultiOutputAdapter mAdapter;
+        private final int mPosition;
+        private final String[] mMimeTypes;
+
+        Representations(SuperClipboard.MultiOutputAdapter adapter, int position,
+                        String[] mimeTypes) {
+            mAdapter = adapter;
+            mPosition = position;
+            mMimeTypes = mimeTypes;
+        }
+
+        /**
+         * 获取符合过滤条件的格式
+         *
+         * @param filter 过滤条件，支持通配符，如：text/*
+         * @return 符合条件的格式
+         */
+        List<String> getMimeTypes(String filter) {
+            final ArrayList<String> types = new ArrayList<>();
+            for (String type : mMimeTypes) {
+                if (ClipDescription.compareMimeTypes(type, filter)) {
+                    types.add(type);
+                }
+            }
+            return types;
+        }
+
+        /**
+         * 获取写入项
+         *
+         * @param filter 过滤条件，支持通配符，如：text/*
+         * @return 首个符合条件的格式的流式写入项，无符合条件的格式时返回null
+         */
+        Entry getEntry(String filter) {
+            for (String type : mMimeTypes) {
+                if (ClipDescription.compareMimeTypes(type, filter)) {
+                    return new Entry(mAdapter, mPosition, type, false, true);
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2021 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.am.clipboard;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 线程池辅助
+ */
+class ExecutorHelper {
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private static ExecutorService sParallelExecutor;
+    private static ExecutorService sIOExecutor;
+    private static ExecutorService sPipeExecutor;
+    private static ExecutorService sHousekeepingExecutor;
+
+    private ExecutorHelper() {
+        //no instance
+    }
+
+    private static ThreadFactory newThreadFactory(String name, int priority) {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        };
+    }
+
+    private static ThreadFactory newThreadFactory(String name) {
+        return newThreadFactory(name, Thread.NORM_PRIORITY);
+    }
+
+    private static ExecutorService newExecutor(ThreadFactory factory, int threads) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), factory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 获取并行处理子项的线程池，线程数不超过CPU核心数
+     *
+     * @return 线程池
+     */
+    static synchronized ExecutorService getParallelExecutor() {
+        if (sParallelExecutor == null) {
+            final int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            sParallelExecutor = newExecutor(newThreadFactory("SuperClipboard-parallel"),
+                    threads);
+        }
+        return sParallelExecutor;
+    }
+
+    /**
+     * 获取异步任务的I/O线程池，单线程以保证任务按提交顺序执行
+     *
+     * @return 线程池
+     */
+    static synchronized ExecutorService getIOExecutor() {
+        if (sIOExecutor == null) {
+            sIOExecutor = newExecutor(newThreadFactory("SuperClipboard-io"), 1);
+        }
+        return sIOExecutor;
+    }
+
+    /**
+     * 获取管道传输线程池
+     * 管道两端互相等待，每个管道必须独占线程，因此线程数不设上限
+     *
+     * @return 线程池
+     */
+    static synchronized ExecutorService getPipeExecutor() {
+        if (sPipeExecutor == null) {
+            sPipeExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                    newThreadFactory("SuperClipboard-pipe"));
+        }
+        return sPipeExecutor;
+    }
+
+    /**
+     * 获取后台清理线程池
+     * 删除遗留文件等清理工作不占用异步任务的I/O线程，单线程低优先级执行
+     *
+     * @return 线程池
+     */
+    static synchronized ExecutorService getHousekeepingExecutor() {
+        if (sHousekeepingExecutor == null) {
+            sHousekeepingExecutor = newExecutor(
+                    newThreadFactory("SuperClipboard-housekeeping", Thread.MIN_PRIORITY), 1);
+        }
+        return sHousekeepingExecutor;
+    }
+
+    /**
+     * 并行执行任务，任一任务失败或异步任务取消后不再开始新的任务
+     * 异步任务取消时中断正在执行的任务，方法会等待全部已开始的任务结束后才返回
+     *
+     * @param count 任务总数
+     * @param owner 所属的异步任务，可为空
+     * @param task  任务
+     * @return 全部任务成功时返回true
+     */
+    static boolean runParallel(int count, ClipboardTask owner, Task task) {
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        final CountDownLatch latch = new CountDownLatch(count);
+        final ExecutorService executor = getParallelExecutor();
+        for (int i = 0; i < count; i++) {
+            final int position = i;
+            try {
+                executor.execute(() -> {
+                    if (owner != null && !owner.attach()) {
+                        failed.set(true);
+                        latch.countDown();
+                        return;
+                    }
+                    try {
+                        if (!failed.get() && !task.run(position)) {
+                            failed.set(true);
+                        }
+                    } catch (Throwable t) {
+                        failed.set(true);
+                    } finally {
+                        if (owner != null) {
+                            owner.detach();
+                        }
+                        latch.countDown();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                failed.set(true);
+                latch.countDown();
+            }
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+                failed.set(true);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return !failed.get();
+    }
+
+    /**
+     * 任务
+     */
+    interface Task {
+
+        /**
+         * 执行
+         *
+         * @param position 位置
+         * @return 成功时返回true
+         */
+        boolean run(int position);
+    }
+}
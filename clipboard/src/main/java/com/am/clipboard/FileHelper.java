@@ -1,14 +1,25 @@
 package com.am.clipboard;
 
+import android.os.Build;
 import android.os.ParcelFileDescriptor;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.UUID;
 
 /**
@@ -21,40 +32,289 @@ class FileHelper {
         //no instance
     }
 
-    private static void copy(InputStream input, OutputStream output) throws IOException {
-        final byte[] buffer = new byte[1024];
-        int count;
-        while ((count = input.read(buffer)) != -1) {
-            if (count == 0) {
-                count = input.read();
-                if (count < 0)
-                    break;
-                output.write(count);
-                continue;
+    static long copy(InputStream input, OutputStream output) throws IOException {
+        final byte[] buffer = BufferHelper.obtain();
+        try {
+            long total = 0;
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                if (count == 0) {
+                    count = input.read();
+                    if (count < 0)
+                        break;
+                    output.write(count);
+                    total++;
+                    continue;
+                }
+                output.write(buffer, 0, count);
+                total += count;
             }
-            output.write(buffer, 0, count);
             output.flush();
+            return total;
+        } finally {
+            BufferHelper.recycle(buffer);
+        }
+    }
+
+    private static void transferTo(FileChannel input, long position, long size,
+                                   FileChannel output) throws IOException {
+        long done = 0;
+        while (done < size) {
+            final long count = input.transferTo(position + done, size - done, output);
+            if (count <= 0) {
+                // 源文件被截断，不可作为完整数据提交
+                throw new IOException("Unexpected end of file");
+            }
+            done += count;
+        }
+    }
+
+    private static void transferFrom(FileChannel input, long size, FileChannel output)
+            throws IOException {
+        long position = 0;
+        while (position < size) {
+            final long count = output.transferFrom(input, position, size - position);
+            if (count <= 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += count;
         }
     }
 
-    private static boolean copyFile(File source, OutputStream target) {
-        try (final FileInputStream input = new FileInputStream(source)) {
-            copy(input, target);
+    /**
+     * 复制文件到文件描述符
+     * 可定位的文件描述符由内核直接传输，管道等不可定位的文件描述符使用缓冲区复制
+     *
+     * @param source 源文件
+     * @param target 目标文件描述符，复制完成后关闭
+     * @return 复制成功时返回true
+     */
+    static boolean copyFile(File source, ParcelFileDescriptor target) {
+        try (final FileOutputStream output =
+                     new ParcelFileDescriptor.AutoCloseOutputStream(target);
+             final FileInputStream input = new FileInputStream(source)) {
+            if (target.getStatSize() >= 0) {
+                final FileChannel channel = input.getChannel();
+                transferTo(channel, 0, channel.size(), output.getChannel());
+            } else {
+                copy(input, output);
+            }
             return true;
         } catch (Throwable t) {
             return false;
         }
     }
 
-    private static boolean copyFile(InputStream source, File target) {
-        try (final FileOutputStream output = new FileOutputStream(target)) {
-            copy(source, output);
+    /**
+     * 复制文件描述符到文件
+     * 可定位的文件描述符由内核直接传输，管道等不可定位的文件描述符使用缓冲区复制
+     *
+     * @param source 源文件描述符，复制完成后关闭
+     * @param target 目标文件
+     * @return 复制成功时返回true
+     */
+    static boolean copyFile(ParcelFileDescriptor source, File target) {
+        try (final FileInputStream input =
+                     new ParcelFileDescriptor.AutoCloseInputStream(source);
+             final FileOutputStream output = new FileOutputStream(target)) {
+            final long size = source.getStatSize();
+            if (size >= 0) {
+                transferFrom(input.getChannel(), size, output.getChannel());
+            } else {
+                copy(input, output);
+            }
             return true;
         } catch (Throwable t) {
             return false;
         }
     }
 
+    /**
+     * 以只读方式映射文件描述符
+     *
+     * @param descriptor 文件描述符，映射完成后关闭，映射不受关闭影响
+     * @return 内存映射，文件描述符不是普通文件时返回null
+     */
+    static MappedByteBuffer map(ParcelFileDescriptor descriptor) {
+        try (final FileInputStream input =
+                     new ParcelFileDescriptor.AutoCloseInputStream(descriptor)) {
+            final long size = descriptor.getStatSize();
+            if (size < 0 || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            return input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    /**
+     * 复制文件描述符到目录下的新文件
+     *
+     * @param source    源文件描述符，复制完成后关闭
+     * @param directory 目录
+     * @return 新文件，复制失败时返回null
+     */
+    static File copyToDirectory(ParcelFileDescriptor source, File directory) {
+        return copyToDirectory(source, directory, 0, null);
+    }
+
+    /**
+     * 复制文件描述符到目录下的新文件
+     *
+     * @param source    源文件描述符，复制完成后关闭
+     * @param directory 目录
+     * @param position  子项位置
+     * @param listener  进度监听，可为空
+     * @return 新文件，复制失败时返回null
+     */
+    static File copyToDirectory(ParcelFileDescriptor source, File directory, int position,
+                                SuperClipboard.ProgressListener listener) {
+        final File file = new File(directory, UUID.randomUUID().toString());
+        if (listener == null ? copyFile(source, file) :
+                TransferHelper.copy(source, file, position, listener)) {
+            return file;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        return null;
+    }
+
+    /**
+     * 关闭，忽略异常
+     *
+     * @param closeable 可关闭对象，可为空
+     */
+    static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * 创建管道，支持时创建可回传错误的可靠管道
+     *
+     * @return 管道，[0]为读取端，[1]为写入端
+     * @throws IOException 创建失败
+     */
+    static ParcelFileDescriptor[] createPipe() throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return ParcelFileDescriptor.createReliablePipe();
+        }
+        return ParcelFileDescriptor.createPipe();
+    }
+
+    /**
+     * 关闭管道一端，失败时回传错误
+     *
+     * @param descriptor 管道一端
+     * @param error      错误，为空时正常关闭
+     */
+    static void closePipe(ParcelFileDescriptor descriptor, String error) {
+        try {
+            if (error != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                descriptor.closeWithError(error);
+            } else {
+                descriptor.close();
+            }
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * 检查管道写入端是否回传了错误
+     * 需在读取到结尾后调用，回传的错误仅可由未关闭的原读取端获取
+     *
+     * @param descriptor 管道读取端
+     * @return 未回传错误时返回true
+     */
+    static boolean checkError(ParcelFileDescriptor descriptor) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            return true;
+        }
+        try {
+            descriptor.checkError();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 同步文件数据至磁盘，仅同步数据及必要的元数据
+     *
+     * @param file 文件
+     * @return 同步成功时返回true
+     */
+    static boolean sync(File file) {
+        try (final RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.getChannel().force(false);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 同步文件夹至磁盘，使其中的创建、重命名及删除持久化
+     * Android 5.0以下无法打开文件夹，不同步
+     *
+     * @param directory 文件夹
+     * @return 同步成功时返回true
+     */
+    static boolean syncDirectory(File directory) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return true;
+        }
+        try {
+            final FileDescriptor fd = Os.open(directory.getPath(), OsConstants.O_RDONLY, 0);
+            try {
+                Os.fsync(fd);
+            } finally {
+                Os.close(fd);
+            }
+            return true;
+        } catch (ErrnoException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 计算文件内容摘要
+     *
+     * @param file 文件
+     * @return SHA-256摘要的十六进制字符串，计算失败时返回null
+     */
+    static String digest(File file) {
+        try (final FileInputStream input = new FileInputStream(file)) {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            final byte[] buffer = BufferHelper.obtain();
+            try {
+                int count;
+                while ((count = input.read(buffer)) != -1) {
+                    digest.update(buffer, 0, count);
+                }
+            } finally {
+                BufferHelper.recycle(buffer);
+            }
+            final byte[] bytes = digest.digest();
+            final StringBuilder builder = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16))
+                        .append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
     /**
      * 删除文件或文件夹
      *
@@ -109,7 +369,7 @@ class FileHelper {
         return count;
     }
 
-    public static class FileOutputAdapter implements SuperClipboard.OutputAdapter {
+    public static class FileOutputAdapter implements SuperClipboard.ChunkedOutputAdapter {
 
         private final String mMimeType;
         private final String[] mMimeTypes;
@@ -138,13 +398,30 @@ class FileHelper {
             return mMimeType != null ? mMimeType : mMimeTypes[position];
         }
 
+        @Override
+        public long getLength(int position) {
+            final File file = mItems[position];
+            return file.isFile() ? file.length() : -1;
+        }
+
         @Override
         public boolean write(int position, ParcelFileDescriptor descriptor) {
-            final File item = mItems[position];
-            try (final OutputStream output =
-                         new ParcelFileDescriptor.AutoCloseOutputStream(descriptor)) {
-                return copyFile(item, output);
-            } catch (Exception e) {
+            return copyFile(mItems[position], descriptor);
+        }
+
+        @Override
+        public String getKey(int position) {
+            // 文件变化时大小或修改时间随之变化，不再续传
+            final File file = mItems[position];
+            return file.getAbsolutePath() + '/' + file.length() + '/' + file.lastModified();
+        }
+
+        @Override
+        public boolean write(int position, long offset, long length, FileChannel channel) {
+            try (final FileInputStream input = new FileInputStream(mItems[position])) {
+                transferTo(input.getChannel(), offset, length, channel);
+                return true;
+            } catch (Throwable t) {
                 return false;
             }
         }
@@ -153,54 +430,82 @@ class FileHelper {
     public static class FileInputAdapter implements SuperClipboard.InputAdapter {
 
         private final File mFile;
+        private final SuperClipboard.ProgressListener mListener;
 
         public FileInputAdapter(File file) {
+            this(file, null);
+        }
+
+        public FileInputAdapter(File file, SuperClipboard.ProgressListener listener) {
             mFile = file;
+            mListener = listener;
         }
 
         @Override
         public boolean read(String mimeType, ParcelFileDescriptor descriptor) {
-            try (final InputStream input =
-                         new ParcelFileDescriptor.AutoCloseInputStream(descriptor)) {
-                if (mFile != null) {
-                    return copyFile(input, mFile);
-                } else {
-                    return false;
-                }
-            } catch (Exception e) {
+            if (mFile == null) {
                 return false;
             }
+            return mListener == null ? copyFile(descriptor, mFile) :
+                    TransferHelper.copy(descriptor, mFile, 0, mListener);
         }
     }
 
-    public static class DirectoryInputAdapter implements SuperClipboard.InputAdapter {
+    public static class DirectoryInputAdapter implements SuperClipboard.ParallelInputAdapter {
 
         private final File mDirectory;
+        private final SuperClipboard.ProgressListener mListener;
         private final ArrayList<File> mItems = new ArrayList<>();
 
         public DirectoryInputAdapter(File directory) {
+            this(directory, null);
+        }
+
+        public DirectoryInputAdapter(File directory, SuperClipboard.ProgressListener listener) {
             mDirectory = directory;
+            mListener = listener;
         }
 
         @Override
         public boolean read(String mimeType, ParcelFileDescriptor descriptor) {
-            try (final InputStream input =
-                         new ParcelFileDescriptor.AutoCloseInputStream(descriptor)) {
-                final File file = new File(mDirectory, UUID.randomUUID().toString());
-                if (copyFile(input, file)) {
-                    mItems.add(file);
-                    return true;
-                }
-                //noinspection ResultOfMethodCallIgnored
-                file.delete();
+            final int position;
+            synchronized (mItems) {
+                position = mItems.size();
+            }
+            final File file = copyToDirectory(descriptor, mDirectory, position, mListener);
+            if (file == null) {
                 return false;
-            } catch (Exception e) {
+            }
+            synchronized (mItems) {
+                mItems.add(file);
+            }
+            return true;
+        }
+
+        @Override
+        public void onStart(int count) {
+            synchronized (mItems) {
+                mItems.clear();
+                mItems.addAll(Collections.nCopies(count, null));
+            }
+        }
+
+        @Override
+        public boolean read(int position, String mimeType, ParcelFileDescriptor descriptor) {
+            final File file = copyToDirectory(descriptor, mDirectory, position, mListener);
+            if (file == null) {
                 return false;
             }
+            synchronized (mItems) {
+                mItems.set(position, file);
+            }
+            return true;
         }
 
         public ArrayList<File> getItems() {
-            return mItems;
+            synchronized (mItems) {
+                return new ArrayList<>(mItems);
+            }
         }
     }
 }
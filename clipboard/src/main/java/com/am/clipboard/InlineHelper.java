@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2021 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.am.clipboard;
+
+import android.content.ClipData;
+import android.content.Intent;
+import android.os.ParcelFileDescriptor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 内联子项辅助
+ * 小于阈值的子项直接以Intent附加数据的形式存放于剪切板子项中，不创建文件，也不经过内容提供者
+ */
+class InlineHelper {
+
+    static final int MAX_THRESHOLD = 64 * 1024;// 剪切板需经过Binder传输，不宜过大
+    private static final String ACTION_INLINE = "com.am.clipboard.action.INLINE";
+    private static final String EXTRA_DATA = "com.am.clipboard.extra.DATA";
+    private static volatile int sThreshold;
+
+    private InlineHelper() {
+        //no instance
+    }
+
+    /**
+     * 设置内联阈值
+     *
+     * @param threshold 阈值，不大于0时不内联
+     */
+    static void setThreshold(int threshold) {
+        sThreshold = Math.max(0, Math.min(threshold, MAX_THRESHOLD));
+    }
+
+    /**
+     * 获取内联阈值
+     *
+     * @return 阈值，为0时不内联
+     */
+    static int getThreshold() {
+        return sThreshold;
+    }
+
+    /**
+     * 创建内联子项
+     *
+     * @param mimeType MIME类型
+     * @param data     数据
+     * @return 剪切板子项
+     */
+    static ClipData.Item newItem(String mimeType, byte[] data) {
+        final Intent intent = new Intent(ACTION_INLINE);
+        intent.setType(mimeType);
+        intent.putExtra(EXTRA_DATA, data);
+        return new ClipData.Item(null, intent, null);
+    }
+
+    /**
+     * 判断是否为内联子项
+     *
+     * @param item 剪切板子项
+     * @return 是内联子项时返回true
+     */
+    static boolean isInline(ClipData.Item item) {
+        final Intent intent = item.getIntent();
+        return intent != null && ACTION_INLINE.equals(intent.getAction()) &&
+                intent.getByteArrayExtra(EXTRA_DATA) != null;
+    }
+
+    /**
+     * 获取内联子项MIME类型
+     *
+     * @param item 内联子项
+     * @return MIME类型
+     */
+    static String getMimeType(ClipData.Item item) {
+        return item.getIntent().getType();
+    }
+
+    /**
+     * 获取内联子项数据
+     *
+     * @param item 内联子项
+     * @return 数据
+     */
+    static byte[] getData(ClipData.Item item) {
+        return item.getIntent().getByteArrayExtra(EXTRA_DATA);
+    }
+
+    /**
+     * 获取内联数据
+     * 仅支持{@link InlineOutputAdapter}及已知大小不超过阈值的{@link SuperClipboard.SizedOutputAdapter}
+     *
+     * @param adapter  输出内容提供者
+     * @param position 位置
+     * @param limit    阈值
+     * @return 数据，不支持、超出阈值或写入失败时返回null，此时应改为写入文件
+     */
+    static byte[] toByteArray(SuperClipboard.OutputAdapter adapter, int position, int limit) {
+        if (adapter instanceof InlineOutputAdapter) {
+            return ((InlineOutputAdapter) adapter).toByteArray(position, limit);
+        }
+        if (!(adapter instanceof SuperClipboard.SizedOutputAdapter)) {
+            return null;
+        }
+        final long length = ((SuperClipboard.SizedOutputAdapter) adapter).getLength(position);
+        if (length < 0 || length > limit) {
+            return null;
+        }
+        final ParcelFileDescriptor[] pipe;
+        try {
+            pipe = FileHelper.createPipe();
+        } catch (IOException e) {
+            return null;
+        }
+        final Future<byte[]> future;
+        try {
+            // 由管道线程读取，避免写入超出管道缓冲时阻塞
+            future = ExecutorHelper.getPipeExecutor().submit(() -> {
+                try (final InputStream input =
+                             new ParcelFileDescriptor.AutoCloseInputStream(pipe[0])) {
+                    final LimitedOutputStream output = new LimitedOutputStream(limit);
+                    FileHelper.copy(input, output);
+                    return output.toByteArray();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            FileHelper.closeQuietly(pipe[0]);
+            FileHelper.closeQuietly(pipe[1]);
+            return null;
+        }
+        final boolean success;
+        try {
+            success = adapter.write(position, pipe[1]);
+        } finally {
+            FileHelper.closeQuietly(pipe[1]);
+        }
+        try {
+            final byte[] data = future.get();
+            return success ? data : null;
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * 读取内联子项
+     * 由管道线程写入数据，输入内容提供者从管道读取端读取
+     *
+     * @param adapter 输入内容提供者
+     * @param item    内联子项
+     * @return 读取成功时返回true
+     */
+    static boolean read(SuperClipboard.InputAdapter adapter, ClipData.Item item) {
+        final byte[] data = getData(item);
+        final ParcelFileDescriptor[] pipe;
+        try {
+            pipe = FileHelper.createPipe();
+        } catch (IOException e) {
+            return false;
+        }
+        try {
+            ExecutorHelper.getPipeExecutor().execute(() -> {
+                String error = null;
+                try (final OutputStream output = new FileOutputStream(
+                        pipe[1].getFileDescriptor())) {
+                    output.write(data);
+                } catch (IOException e) {
+                    error = "Write failed: " + e.getMessage();
+                }
+                FileHelper.closePipe(pipe[1], error);
+            });
+        } catch (RejectedExecutionException e) {
+            FileHelper.closeQuietly(pipe[0]);
+            FileHelper.closeQuietly(pipe[1]);
+            return false;
+        }
+        try (final ParcelFileDescriptor descriptor = pipe[0]) {
+            // 与文件子项相同，读取后检查管道写入端回传的错误，避免将截断的数据视为成功
+            return ClipboardProvider.read(adapter, getMimeType(item), descriptor);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * 可内联的输出内容提供者
+     */
+    interface InlineOutputAdapter {
+
+        /**
+         * 写入内存
+         *
+         * @param position 位置
+         * @param limit    阈值
+         * @return 数据，超出阈值或写入失败时返回null
+         */
+        byte[] toByteArray(int position, int limit);
+    }
+
+    /**
+     * 限制大小的内存输出流，超出时抛出异常
+     */
+    static final class LimitedOutputStream extends ByteArrayOutputStream {
+
+        private final int mLimit;
+
+        LimitedOutputStream(int limit) {
+            super(Math.min(limit, 1024));
+            mLimit = limit;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (count + 1 > mLimit) {
+                throw new IllegalStateException("Limit exceeded: " + mLimit);
+            }
+            super.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            if (count + len > mLimit) {
+                throw new IllegalStateException("Limit exceeded: " + mLimit);
+            }
+            super.write(b, off, len);
+        }
+    }
+}
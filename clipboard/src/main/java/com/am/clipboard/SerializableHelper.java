@@ -17,10 +17,14 @@ package com.am.clipboard;
 
 import android.os.ParcelFileDescriptor;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 
 /**
  * 序列化数据辅助器
@@ -31,22 +35,43 @@ class SerializableHelper {
         //no instance
     }
 
-    public static class SerializableOutputAdapter implements SuperClipboard.OutputAdapter {
+    /**
+     * 读取序列化数据
+     *
+     * @param descriptor 文件，读取完成后关闭
+     * @return 序列化数据
+     * @throws Exception 读取失败
+     */
+    static Serializable readObject(ParcelFileDescriptor descriptor) throws Exception {
+        return readObject(new ParcelFileDescriptor.AutoCloseInputStream(descriptor));
+    }
+
+    private static Serializable readObject(InputStream stream) throws Exception {
+        try (final ObjectInputStream input = new ObjectInputStream(BufferHelper.buffer(stream))) {
+            return (Serializable) input.readObject();
+        }
+    }
+
+    public static class SerializableOutputAdapter implements SuperClipboard.OutputAdapter,
+            CacheHelper.CacheableOutputAdapter, InlineHelper.InlineOutputAdapter {
 
         private final String mMimeType;
         private final String[] mMimeTypes;
         private final Serializable[] mItems;
+        private final Object[] mCaches;
 
         public SerializableOutputAdapter(String mimeType, Serializable... items) {
             mMimeType = mimeType;
             mMimeTypes = null;
             mItems = items;
+            mCaches = new Object[items.length];
         }
 
         public SerializableOutputAdapter(String[] mimeTypes, Serializable[] items) {
             mMimeType = null;
             mMimeTypes = mimeTypes;
             mItems = items;
+            mCaches = new Object[items.length];
         }
 
         @Override
@@ -63,25 +88,86 @@ class SerializableHelper {
         @Override
         public boolean write(int position, ParcelFileDescriptor descriptor) {
             final Serializable item = mItems[position];
+            final OutputStream stream = new ParcelFileDescriptor.AutoCloseOutputStream(descriptor);
+            final boolean immutable = CacheHelper.isImmutable(item);
+            final CacheHelper.CaptureOutputStream capture =
+                    immutable ? null : new CacheHelper.CaptureOutputStream(stream);
             try (final ObjectOutputStream output = new ObjectOutputStream(
-                    new ParcelFileDescriptor.AutoCloseOutputStream(descriptor))) {
+                    BufferHelper.buffer(immutable ? stream : capture))) {
                 output.writeObject(item);
-                return true;
             } catch (Exception e) {
                 return false;
             }
+            mCaches[position] = immutable ? item : capture.toByteArray();
+            return true;
+        }
+
+        @Override
+        public Object getCache(int position) {
+            return mCaches[position];
+        }
+
+        @Override
+        public byte[] toByteArray(int position, int limit) {
+            final InlineHelper.LimitedOutputStream stream =
+                    new InlineHelper.LimitedOutputStream(limit);
+            try (final ObjectOutputStream output = new ObjectOutputStream(stream)) {
+                output.writeObject(mItems[position]);
+            } catch (Exception e) {
+                return null;
+            }
+            return stream.toByteArray();
         }
     }
 
-    public static class SerializableInputAdapter implements SuperClipboard.InputAdapter {
+    public static class SerializableInputAdapter implements SuperClipboard.ParallelInputAdapter,
+            CacheHelper.CacheableInputAdapter {
 
         private final ArrayList<Serializable> mItems = new ArrayList<>();
 
         @Override
         public boolean read(String mimeType, ParcelFileDescriptor descriptor) {
-            try (final ObjectInputStream input = new ObjectInputStream(
-                    new ParcelFileDescriptor.AutoCloseInputStream(descriptor))) {
-                mItems.add((Serializable) input.readObject());
+            try {
+                final Serializable item = readObject(descriptor);
+                synchronized (mItems) {
+                    mItems.add(item);
+                }
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void onStart(int count) {
+            synchronized (mItems) {
+                mItems.clear();
+                mItems.addAll(Collections.nCopies(count, null));
+            }
+        }
+
+        @Override
+        public boolean read(int position, String mimeType, ParcelFileDescriptor descriptor) {
+            try {
+                final Serializable item = readObject(descriptor);
+                synchronized (mItems) {
+                    mItems.set(position, item);
+                }
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        @Override
+        public boolean readCache(int position, String mimeType, Object value) {
+            try {
+                // 编码数据反序列化为副本，避免与写入方共享可变对象
+                final Serializable item = value instanceof byte[] ?
+                        readObject(new ByteArrayInputStream((byte[]) value)) : (Serializable) value;
+                synchronized (mItems) {
+                    mItems.set(position, item);
+                }
                 return true;
             } catch (Exception e) {
                 return false;
@@ -89,7 +175,9 @@ class SerializableHelper {
         }
 
         public ArrayList<Serializable> getItems() {
-            return mItems;
+            synchronized (mItems) {
+                return new ArrayList<>(mItems);
+            }
         }
     }
 }
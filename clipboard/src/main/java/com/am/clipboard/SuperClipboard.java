@@ -23,22 +23,178 @@ import android.content.Context;
 import android.net.Uri;
 import android.os.Build;
 import android.os.ParcelFileDescriptor;
+import android.os.Parcelable;
+import android.text.TextUtils;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * 超级剪切板
  */
 public class SuperClipboard {
 
+    /**
+     * 标志：并行处理多个子项
+     * 写入时要求{@link OutputAdapter#write(int, ParcelFileDescriptor)}线程安全，
+     * 读取时要求输入内容提供者为{@link ParallelInputAdapter}
+     */
+    public static final int FLAG_PARALLEL = 1;
+    /**
+     * 标志：读取存储的原始数据，压缩子项不解压
+     * 压缩格式可通过{@link ClipboardItemInfo#getCodec()}获取
+     */
+    public static final int FLAG_RAW = 2;
+    /**
+     * 标志：延迟写入
+     * 设置剪切板时仅登记输出内容提供者并立即发布，子项首次被读取时才写入，写入结果保存为文件供之后读取。
+     * 输出内容提供者需保持可用直至剪切板被替换，写入在后台线程执行；延迟写入的子项不压缩也不内联，
+     * 首次读取经由管道，无法以内存映射方式读取；进程结束后未写入的子项失效。
+     * 仅可在内容提供者所在的进程中使用，其他进程设置时设置失败。
+     */
+    public static final int FLAG_DEFERRED = 4;
+    /**
+     * 标志：流式子项
+     * 设置剪切板时仅登记输出内容提供者并立即发布，不占用存储；每次读取时由后台线程重新写入管道，
+     * 读取方读取速度决定写入速度，写入失败时读取失败。输出内容提供者需支持重复写入并保持可用直至剪切板被替换，
+     * 无法以内存映射方式读取；进程结束后子项失效。同时设置{@link #FLAG_DEFERRED}时以本标志为准。
+     * 仅可在内容提供者所在的进程中使用，其他进程设置时设置失败。
+     */
+    public static final int FLAG_STREAMING = 8;
+
+    /**
+     * 持久化模式：不同步
+     * 子项写入暂存文件后重命名发布，进程崩溃不会遗留不完整的子项；系统崩溃或断电时可能丢失最近写入的子项
+     */
+    public static final int DURABILITY_NONE = 0;
+    /**
+     * 持久化模式：逐项同步
+     * 每个子项提交时同步数据、目录及日志，提交成功后即可在系统崩溃后保留，写入延迟最高
+     */
+    public static final int DURABILITY_ITEM = 1;
+    /**
+     * 持久化模式：按剪切板同步
+     * 子项提交时不同步，设置剪切板时统一同步一次，剪切板设置成功后即可在系统崩溃后保留
+     */
+    public static final int DURABILITY_CLIP = 2;
+
+    private static volatile boolean sDeduplicate;
+    private static volatile long sQuotaBytes;
+    private static volatile int sQuotaItems;
+    private static volatile int sDurability;
+    private static volatile int sHistorySize;
+
     private SuperClipboard() {
         //no instance
     }
 
+    /**
+     * 设置是否启用内容去重
+     * 启用后写入的子项按内容摘要存储，内容相同的子项共享同一份数据，重复复制仅需计算一次摘要
+     *
+     * @param enable 是否启用
+     */
+    public static void setDeduplicateEnabled(boolean enable) {
+        sDeduplicate = enable;
+    }
+
+    /**
+     * 判断是否启用内容去重
+     *
+     * @return 启用时返回true
+     */
+    public static boolean isDeduplicateEnabled() {
+        return sDeduplicate;
+    }
+
+    /**
+     * 设置存储配额
+     * 超出配额时按最久未访问的顺序淘汰历史剪切板的子项，仍不足时写入失败；
+     * 写入中及当前剪切板的子项不会被淘汰，写入新剪切板失败时当前剪切板仍然完整。
+     * 输出内容提供者为{@link SizedOutputAdapter}时，在写入开始前即可判断配额是否足够。
+     * 设置于设置剪切板时由内容提供者保存，之后其他进程写入及冷启动时仍然有效
+     *
+     * @param maxBytes 最大存储大小，不大于0时不限制
+     * @param maxItems 最大子项个数，不大于0时不限制
+     */
+    public static void setQuota(long maxBytes, int maxItems) {
+        sQuotaBytes = maxBytes;
+        sQuotaItems = maxItems;
+        ClipboardSettings.put(ClipboardSettings.KEY_QUOTA_BYTES, maxBytes);
+        ClipboardSettings.put(ClipboardSettings.KEY_QUOTA_ITEMS, maxItems);
+    }
+
+    /**
+     * 获取最大存储大小
+     *
+     * @return 最大存储大小，不大于0时不限制
+     */
+    public static long getQuotaBytes() {
+        return sQuotaBytes;
+    }
+
+    /**
+     * 获取最大子项个数
+     *
+     * @return 最大子项个数，不大于0时不限制
+     */
+    public static int getQuotaItems() {
+        return sQuotaItems;
+    }
+
+    /**
+     * 设置持久化模式
+     * 以写入延迟换取系统崩溃或断电后数据的完整性，默认为{@link #DURABILITY_NONE}
+     * 设置于设置剪切板时由内容提供者保存，之后其他进程写入及冷启动时仍然有效
+     *
+     * @param durability 持久化模式，如：{@link #DURABILITY_ITEM}
+     */
+    public static void setDurability(int durability) {
+        sDurability = durability;
+        ClipboardSettings.put(ClipboardSettings.KEY_DURABILITY, durability);
+    }
+
+    /**
+     * 获取持久化模式
+     *
+     * @return 持久化模式
+     */
+    public static int getDurability() {
+        return sDurability;
+    }
+
+    /**
+     * 设置剪切板历史容量
+     * 设置剪切板后，之前的剪切板作为历史保留，可按编号读取；超出容量时淘汰最旧的剪切板。
+     * 历史剪切板仅保留已写入存储的子项，内联、流式及尚未写入的延迟写入子项不会保留；超出存储配额时历史子项优先淘汰
+     * 设置于设置剪切板时由内容提供者保存，之后其他进程写入及冷启动时仍然有效
+     *
+     * @param size 保留的历史剪切板个数，不含当前剪切板，不大于0时不保留
+     */
+    public static void setHistorySize(int size) {
+        sHistorySize = Math.max(0, size);
+        ClipboardSettings.put(ClipboardSettings.KEY_HISTORY_SIZE, sHistorySize);
+    }
+
+    /**
+     * 获取剪切板历史容量
+     *
+     * @return 保留的历史剪切板个数
+     */
+    public static int getHistorySize() {
+        return sHistorySize;
+    }
+
     private static ClipboardManager getClipboardManager(Context context) {
         if (Build.VERSION.SDK_INT >= 23) {
             return context.getSystemService(ClipboardManager.class);
@@ -47,6 +203,85 @@ public class SuperClipboard {
         }
     }
 
+    /**
+     * 设置压缩
+     * 启用后指定类型且大小不小于阈值的子项以DEFLATE格式边写入边压缩，读取时自动解压
+     *
+     * @param level     压缩等级，1至9
+     * @param threshold 大小阈值，最大为1MB
+     * @param mimeTypes MIME类型，为空时所有类型均压缩
+     */
+    public static void setCompression(int level, long threshold, String... mimeTypes) {
+        if (!CompressionHelper.isSupported(CompressionHelper.CODEC_DEFLATE, level)) {
+            throw new IllegalArgumentException("Unsupported compression level: " + level);
+        }
+        CompressionHelper.setConfig(new CompressionHelper.Config(CompressionHelper.CODEC_DEFLATE,
+                level, threshold, mimeTypes));
+    }
+
+    /**
+     * 关闭压缩
+     */
+    public static void disableCompression() {
+        CompressionHelper.setConfig(null);
+    }
+
+    /**
+     * 设置内联阈值
+     * 不超过阈值的子项直接存放于剪切板子项中，不创建文件，复制粘贴仅需一次剪切板调用。
+     * 仅序列化数据、编解码器子项及已知大小的{@link SizedOutputAdapter}支持内联；
+     * 内联子项无法以内存映射方式读取。
+     *
+     * @param threshold 阈值，最大为64KB，不大于0时不内联
+     */
+    public static void setInlineThreshold(int threshold) {
+        InlineHelper.setThreshold(threshold);
+    }
+
+    /**
+     * 设置分块大小
+     * 启用后大于分块大小且未压缩的{@link ChunkedOutputAdapter}子项按块写入，每块写入后同步并记录已提交的偏移，
+     * 写入被取消或进程结束后，以相同传输标识再次设置剪切板时从最后提交的块继续写入；
+     * 同时作为进度回调的间隔。
+     *
+     * @param size 分块大小，最小为64KB，不大于0时不分块
+     */
+    public static void setChunkSize(long size) {
+        TransferHelper.setChunkSize(size);
+    }
+
+    /**
+     * 获取分块大小
+     *
+     * @return 分块大小，为0时不分块
+     */
+    public static long getChunkSize() {
+        return TransferHelper.getChunkSize();
+    }
+
+    /**
+     * 注册编解码器
+     * 使用编解码器设置或获取剪切板且未指定编解码器时，按MIME类型使用已注册的编解码器
+     *
+     * @param mimeType MIME类型
+     * @param codec    编解码器，为空时取消注册
+     */
+    public static void registerCodec(String mimeType, Codec<?> codec) {
+        CodecHelper.register(mimeType, codec);
+    }
+
+    /**
+     * 获取Parcelable编解码器
+     * Parcel数据格式与系统版本相关，仅适用于同一设备上的复制粘贴
+     *
+     * @param creator Parcelable构造器
+     * @return 编解码器
+     */
+    public static <T extends Parcelable> Codec<T> getParcelableCodec(
+            Parcelable.Creator<T> creator) {
+        return new CodecHelper.ParcelableCodec<>(creator);
+    }
+
     /**
      * 获取MIME，基础类型为游标子项
      *
@@ -70,6 +305,7 @@ public class SuperClipboard {
                 }
             }
         }
+        CacheHelper.retain(uris);
         ClipboardProvider.delete(context, uris);
     }
 
@@ -81,27 +317,109 @@ public class SuperClipboard {
      * @return 设置成功时返回true
      */
     public static boolean setPrimaryClip(Context context, OutputAdapter adapter) {
+        return setPrimaryClip(context, adapter, 0);
+    }
+
+    /**
+     * 设置剪切板
+     * 任一子项写入失败时，已写入的子项将被回滚
+     *
+     * @param context Context
+     * @param adapter 输出内容提供者
+     * @param flags   标志，如：{@link #FLAG_PARALLEL}
+     * @return 设置成功时返回true
+     */
+    public static boolean setPrimaryClip(Context context, OutputAdapter adapter, int flags) {
+        return setPrimaryClip(context, adapter, flags, null, null);
+    }
+
+    /**
+     * 设置剪切板
+     * 任一子项写入失败时，已写入的子项将被回滚；分块写入的子项保留已提交的块供续传
+     *
+     * @param context  Context
+     * @param adapter  输出内容提供者
+     * @param flags    标志，如：{@link #FLAG_PARALLEL}
+     * @param listener 进度监听，分块写入的子项每块回调一次，其他已知大小的子项写入完成时回调
+     * @return 设置成功时返回true
+     */
+    public static boolean setPrimaryClip(Context context, OutputAdapter adapter, int flags,
+                                         ProgressListener listener) {
+        return setPrimaryClip(context, adapter, flags, listener, null);
+    }
+
+    private static boolean setPrimaryClip(Context context, OutputAdapter adapter, int flags,
+                                          ProgressListener listener, ClipboardTask task) {
         final ClipboardManager manager = getClipboardManager(context);
         if (manager == null) {
             return false;
         }
         final HashSet<String> mimeTypes = new HashSet<>();
-        final ArrayList<Uri> uris = ClipboardProvider.write(context, adapter, mimeTypes);
-        if (uris.isEmpty()) {
+        final ArrayList<ClipData.Item> items =
+                ClipboardProvider.write(context, adapter, mimeTypes, flags, listener, task);
+        if (items.isEmpty()) {
             return false;
         }
         final ClipDescription description = new ClipDescription("URI",
                 mimeTypes.toArray(new String[0]));
-        final ClipData data = new ClipData(description, new ClipData.Item(uris.get(0)));
-        final int size = uris.size();
+        final ClipData data = new ClipData(description, items.get(0));
+        final int size = items.size();
         for (int i = 1; i < size; i++) {
-            data.addItem(new ClipData.Item(uris.get(i)));
+            data.addItem(items.get(i));
+        }
+        if (task != null && !task.commit()) {
+            final ArrayList<Uri> uris = new ArrayList<>();
+            for (ClipData.Item item : items) {
+                if (item.getUri() != null) {
+                    uris.add(item.getUri());
+                }
+            }
+            ClipboardProvider.remove(context, uris);
+            return false;
         }
         delete(context, data);
         manager.setPrimaryClip(data);
         return true;
     }
 
+    /**
+     * 异步设置剪切板
+     * 取消后未开始的子项不再写入，已写入的子项将被删除
+     *
+     * @param context  Context
+     * @param adapter  输出内容提供者
+     * @param flags    标志，如：{@link #FLAG_PARALLEL}
+     * @param executor 回调执行器，为空时在I/O线程回调
+     * @param callback 回调，结果为设置成功与否
+     * @return 任务
+     */
+    public static ClipboardTask setPrimaryClipAsync(Context context, OutputAdapter adapter,
+                                                    int flags, Executor executor,
+                                                    Callback<Boolean> callback) {
+        return setPrimaryClipAsync(context, adapter, flags, null, executor, callback);
+    }
+
+    /**
+     * 异步设置剪切板
+     * 取消后未开始的子项不再写入，已写入的子项将被删除；分块写入的子项保留已提交的块供续传
+     *
+     * @param context  Context
+     * @param adapter  输出内容提供者
+     * @param flags    标志，如：{@link #FLAG_PARALLEL}
+     * @param listener 进度监听，在I/O线程回调
+     * @param executor 回调执行器，为空时在I/O线程回调
+     * @param callback 回调，结果为设置成功与否
+     * @return 任务
+     */
+    public static ClipboardTask setPrimaryClipAsync(Context context, OutputAdapter adapter,
+                                                    int flags, ProgressListener listener,
+                                                    Executor executor,
+                                                    Callback<Boolean> callback) {
+        return ClipboardTask.execute(
+                task -> setPrimaryClip(context, adapter, flags, listener, task),
+                executor, callback);
+    }
+
     /**
      * 设置剪切板
      *
@@ -154,9 +472,152 @@ public class SuperClipboard {
      */
     public static boolean setPrimaryClip(Context context,
                                          String[] mimeTypes, File[] files) {
+        return setPrimaryClip(context, mimeTypes, files, 0);
+    }
+
+    /**
+     * 设置剪切板
+     *
+     * @param context   Context
+     * @param mimeTypes MIME类型集合
+     * @param files     文件合集
+     * @param flags     标志，如：{@link #FLAG_PARALLEL}
+     * @return 设置成功时返回true
+     */
+    public static boolean setPrimaryClip(Context context,
+                                         String[] mimeTypes, File[] files, int flags) {
+        return mimeTypes != null && files != null &&
+                mimeTypes.length == files.length && setPrimaryClip(context,
+                new FileHelper.FileOutputAdapter(mimeTypes, files), flags);
+    }
+
+    /**
+     * 设置剪切板
+     * 启用分块后大文件按块写入，中断后再次设置同一未修改的文件时继续写入
+     *
+     * @param context   Context
+     * @param mimeTypes MIME类型集合
+     * @param files     文件合集
+     * @param flags     标志，如：{@link #FLAG_PARALLEL}
+     * @param listener  进度监听
+     * @return 设置成功时返回true
+     * @see #setChunkSize(long)
+     */
+    public static boolean setPrimaryClip(Context context, String[] mimeTypes, File[] files,
+                                         int flags, ProgressListener listener) {
         return mimeTypes != null && files != null &&
                 mimeTypes.length == files.length && setPrimaryClip(context,
-                new FileHelper.FileOutputAdapter(mimeTypes, files));
+                new FileHelper.FileOutputAdapter(mimeTypes, files), flags, listener);
+    }
+
+    /**
+     * 异步设置剪切板
+     * 启用分块后大文件按块写入，取消或中断后再次设置同一未修改的文件时继续写入
+     *
+     * @param context   Context
+     * @param mimeTypes MIME类型集合
+     * @param files     文件合集
+     * @param flags     标志，如：{@link #FLAG_PARALLEL}
+     * @param listener  进度监听，在I/O线程回调
+     * @param executor  回调执行器，为空时在I/O线程回调
+     * @param callback  回调，结果为设置成功与否
+     * @return 任务，参数错误时返回null
+     * @see #setChunkSize(long)
+     */
+    public static ClipboardTask setPrimaryClipAsync(Context context, String[] mimeTypes,
+                                                    File[] files, int flags,
+                                                    ProgressListener listener,
+                                                    Executor executor,
+                                                    Callback<Boolean> callback) {
+        if (mimeTypes == null || files == null || mimeTypes.length != files.length) {
+            return null;
+        }
+        return setPrimaryClipAsync(context, new FileHelper.FileOutputAdapter(mimeTypes, files),
+                flags, listener, executor, callback);
+    }
+
+    /**
+     * 设置剪切板字节数组数据
+     * 数据直接写入，不经过临时文件及序列化
+     *
+     * @param context  Context
+     * @param mimeType MIME类型
+     * @param items    子项
+     * @return 设置成功时返回true
+     */
+    public static boolean setPrimaryClipBytes(Context context, String mimeType,
+                                              byte[]... items) {
+        return items != null && items.length > 0 && setPrimaryClip(context,
+                new BytesHelper.ByteArrayOutputAdapter(mimeType, items));
+    }
+
+    /**
+     * 设置剪切板字节数组数据
+     * 数据直接写入，不经过临时文件及序列化
+     *
+     * @param context   Context
+     * @param mimeTypes MIME类型集合
+     * @param items     子项集合
+     * @param flags     标志，如：{@link #FLAG_PARALLEL}
+     * @return 设置成功时返回true
+     */
+    public static boolean setPrimaryClipBytes(Context context,
+                                              String[] mimeTypes, byte[][] items, int flags) {
+        return mimeTypes != null && items != null &&
+                mimeTypes.length == items.length && setPrimaryClip(context,
+                new BytesHelper.ByteArrayOutputAdapter(mimeTypes, items), flags);
+    }
+
+    /**
+     * 设置剪切板缓冲区数据
+     * 写入各缓冲区的剩余数据，不改变缓冲区的位置；设置后至写入完成前不可修改缓冲区
+     *
+     * @param context  Context
+     * @param mimeType MIME类型
+     * @param items    子项
+     * @return 设置成功时返回true
+     */
+    public static boolean setPrimaryClipBuffers(Context context, String mimeType,
+                                                ByteBuffer... items) {
+        return items != null && items.length > 0 && setPrimaryClip(context,
+                new BytesHelper.ByteBufferOutputAdapter(mimeType, items));
+    }
+
+    /**
+     * 设置剪切板缓冲区数据
+     * 每个子项由多个缓冲区按顺序聚集写入，不改变缓冲区的位置；设置后至写入完成前不可修改缓冲区
+     *
+     * @param context   Context
+     * @param mimeTypes MIME类型集合
+     * @param items     子项集合，每个子项为一组缓冲区
+     * @param flags     标志，如：{@link #FLAG_PARALLEL}
+     * @return 设置成功时返回true
+     */
+    public static boolean setPrimaryClipBuffers(Context context,
+                                                String[] mimeTypes, ByteBuffer[][] items,
+                                                int flags) {
+        return mimeTypes != null && items != null &&
+                mimeTypes.length == items.length && setPrimaryClip(context,
+                new BytesHelper.ByteBufferOutputAdapter(mimeTypes, items), flags);
+    }
+
+    /**
+     * 设置剪切板
+     *
+     * @param context  Context
+     * @param mimeType MIME类型
+     * @param codec    编解码器，为空时使用该MIME类型已注册的编解码器
+     * @param items    子项集合
+     * @return 设置成功时返回true
+     */
+    public static <T> boolean setPrimaryClip(Context context, String mimeType,
+                                             Codec<? super T> codec, List<T> items) {
+        if (codec == null) {
+            //noinspection unchecked
+            codec = (Codec<? super T>) CodecHelper.get(mimeType);
+        }
+        return codec != null && items != null && !items.isEmpty() && setPrimaryClip(context,
+                new CodecHelper.CodecOutputAdapter<>(mimeType, codec, items));
     }
 
     /**
@@ -187,31 +648,210 @@ public class SuperClipboard {
      * @return 获取成功时返回true
      */
     public static boolean getPrimaryClip(Context context, InputAdapter adapter) {
+        return getPrimaryClip(context, adapter, 0);
+    }
+
+    /**
+     * 获取剪切板数据
+     * 仅{@link ParallelInputAdapter}支持{@link #FLAG_PARALLEL}，其他输入内容提供者依次读取
+     *
+     * @param context Context
+     * @param adapter 输入内容提供者
+     * @param flags   标志，如：{@link #FLAG_PARALLEL}、{@link #FLAG_RAW}
+     * @return 获取成功时返回true
+     */
+    public static boolean getPrimaryClip(Context context, InputAdapter adapter, int flags) {
+        return getPrimaryClip(context, adapter, flags, null, null);
+    }
+
+    /**
+     * 按偏好格式获取剪切板数据
+     * 每个子项读取首个可提供的偏好格式，多格式子项仅写入并传输选中的格式；子项无可提供的偏好格式时读取失败
+     *
+     * @param context   Context
+     * @param adapter   输入内容提供者
+     * @param flags     标志，如：{@link #FLAG_PARALLEL}、{@link #FLAG_RAW}
+     * @param mimeTypes 偏好的MIME类型，按优先级排列，支持通配符，如：text/*
+     * @return 获取成功时返回true
+     */
+    public static boolean getPrimaryClip(Context context, InputAdapter adapter, int flags,
+                                         String... mimeTypes) {
+        return mimeTypes != null && mimeTypes.length > 0 &&
+                getPrimaryClip(context, adapter, flags, mimeTypes, null);
+    }
+
+    /**
+     * 异步获取剪切板数据
+     * 取消后未开始的子项不再读取
+     *
+     * @param context  Context
+     * @param adapter  输入内容提供者
+     * @param flags    标志，如：{@link #FLAG_PARALLEL}
+     * @param executor 回调执行器，为空时在I/O线程回调
+     * @param callback 回调，结果为获取成功与否
+     * @return 任务
+     */
+    public static ClipboardTask getPrimaryClipAsync(Context context, InputAdapter adapter,
+                                                    int flags, Executor executor,
+                                                    Callback<Boolean> callback) {
+        return ClipboardTask.execute(task -> getPrimaryClip(context, adapter, flags, null, task),
+                executor, callback);
+    }
+
+    private static ClipData.Item[] getPrimaryClipItems(Context context) {
         final ClipboardManager manager = getClipboardManager(context);
         if (manager == null || !manager.hasPrimaryClip()) {
-            return false;
+            return null;
         }
         final ClipData data = manager.getPrimaryClip();
         if (data == null) {
-            return false;
+            return null;
         }
         final int count = data.getItemCount();
         if (count <= 0) {
-            return false;
+            return null;
         }
+        final ClipData.Item[] items = new ClipData.Item[count];
         for (int i = 0; i < count; i++) {
-            final Uri uri = data.getItemAt(i).getUri();
-            if (uri == null) {
+            final ClipData.Item item = data.getItemAt(i);
+            if (item.getUri() == null && !InlineHelper.isInline(item)) {
                 // 该情况不应该出现
+                return null;
+            }
+            items[i] = item;
+        }
+        return items;
+    }
+
+    private static boolean getPrimaryClip(Context context, InputAdapter adapter, int flags,
+                                          String[] mimeTypes, ClipboardTask task) {
+        final ClipData.Item[] items = getPrimaryClipItems(context);
+        return items != null && read(context, items, adapter, flags, mimeTypes, task);
+    }
+
+    private static boolean read(Context context, ClipData.Item[] items, InputAdapter adapter,
+                                int flags, String[] mimeTypes, ClipboardTask task) {
+        final int count = items.length;
+        final boolean raw = (flags & FLAG_RAW) != 0;
+        if (!(adapter instanceof ParallelInputAdapter)) {
+            for (ClipData.Item item : items) {
+                if ((task != null && task.isCancelled()) ||
+                        !ClipboardProvider.read(context, adapter, item, raw, mimeTypes)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        final ParallelInputAdapter parallel = (ParallelInputAdapter) adapter;
+        parallel.onStart(count);
+        final CacheHelper.CacheableInputAdapter cacheable =
+                !raw && adapter instanceof CacheHelper.CacheableInputAdapter ?
+                        (CacheHelper.CacheableInputAdapter) adapter : null;
+        final ExecutorHelper.Task read = position -> {
+            if (task != null && task.isCancelled()) {
                 return false;
             }
-            if (!ClipboardProvider.read(context, adapter, uri)) {
+            final ClipData.Item item = items[position];
+            if (cacheable != null) {
+                // 内联子项及同一进程写入的子项，无需经过内容提供者及文件
+                if (InlineHelper.isInline(item)) {
+                    final String mimeType = InlineHelper.getMimeType(item);
+                    return ClipboardProvider.isPreferred(mimeType, mimeTypes, false) &&
+                            cacheable.readCache(position, mimeType, InlineHelper.getData(item));
+                }
+                // 非本内容提供者的子项不使用缓存，由内容提供者读取
+                final String mimeType = ClipboardProvider.getMimeType(context, item.getUri());
+                // 首选格式并非首个偏好格式时，可能需读取其他格式
+                final Object value = mimeType != null &&
+                        ClipboardProvider.isPreferred(mimeType, mimeTypes, true) ?
+                        CacheHelper.get(item.getUri()) : null;
+                if (value != null && cacheable.readCache(position, mimeType, value)) {
+                    return true;
+                }
+            }
+            return ClipboardProvider.read(context,
+                    (mimeType, descriptor) -> parallel.read(position, mimeType, descriptor),
+                    item, raw, mimeTypes);
+        };
+        if ((flags & FLAG_PARALLEL) != 0 && count > 1) {
+            return ExecutorHelper.runParallel(count, task, read);
+        }
+        for (int i = 0; i < count; i++) {
+            if (!read.run(i)) {
                 return false;
             }
         }
         return true;
     }
 
+    /**
+     * 获取剪切板历史
+     *
+     * @param context Context
+     * @return 剪切板编号，由新到旧排列，首项为当前剪切板；获取失败时返回null
+     * @see #setHistorySize(int)
+     */
+    public static long[] getHistory(Context context) {
+        return ClipboardProvider.getHistory(context);
+    }
+
+    /**
+     * 获取历史剪切板子项信息
+     * 仅需一次跨进程调用，不读取子项数据
+     *
+     * @param context Context
+     * @param id      剪切板编号
+     * @return 子项信息，剪切板不存在或部分子项已被淘汰时返回null
+     */
+    public static List<ClipboardItemInfo> getHistoryInfo(Context context, long id) {
+        return ClipboardProvider.getHistory(context, id);
+    }
+
+    /**
+     * 获取历史剪切板数据
+     *
+     * @param context Context
+     * @param id      剪切板编号
+     * @param adapter 输入内容提供者
+     * @param flags   标志，如：{@link #FLAG_PARALLEL}、{@link #FLAG_RAW}
+     * @return 获取成功时返回true，剪切板不存在或部分子项已被淘汰时返回false
+     */
+    public static boolean getHistoryClip(Context context, long id, InputAdapter adapter,
+                                         int flags) {
+        final List<ClipboardItemInfo> infos = ClipboardProvider.getHistory(context, id);
+        final ClipData.Item[] items =
+                infos == null ? null : ClipboardProvider.getItems(context, infos);
+        return items != null && read(context, items, adapter, flags, null, null);
+    }
+
+    /**
+     * 获取剪切板子项信息
+     * 仅需一次跨进程调用，不读取子项数据，适用于粘贴前的预览
+     *
+     * @param context Context
+     * @return 子项信息，剪切板无数据或子项已失效时返回null
+     */
+    public static List<ClipboardItemInfo> getPrimaryClipInfo(Context context) {
+        final ClipData.Item[] items = getPrimaryClipItems(context);
+        return items == null ? null : ClipboardProvider.query(context, items);
+    }
+
+    /**
+     * 以内存映射方式获取剪切板数据
+     * 子项文件以只读方式映射，无需复制到堆内存；压缩存储的子项及内联子项无法映射，将读取失败。
+     * 子项文件不会被原地修改，剪切板被替换后文件虽被删除，已映射的内存仍然有效，直至缓冲区被回收。
+     *
+     * @param context Context
+     * @param adapter 内存映射输入内容提供者
+     * @return 获取成功时返回true
+     */
+    public static boolean getPrimaryClipMapped(Context context, MappedInputAdapter adapter) {
+        return adapter != null && getPrimaryClip(context, (mimeType, descriptor) -> {
+            final MappedByteBuffer buffer = FileHelper.map(descriptor);
+            return buffer != null && adapter.read(mimeType, buffer);
+        });
+    }
+
     /**
      * 获取剪切板序列化数据
      *
@@ -250,6 +890,30 @@ public class SuperClipboard {
         return null;
     }
 
+    /**
+     * 获取剪切板编码数据
+     *
+     * @param context Context
+     * @param codec   编解码器，为空时按子项MIME类型使用已注册的编解码器
+     * @param items   用于存放结果的子项集合
+     * @return 获取成功时返回true
+     */
+    public static <T> boolean getPrimaryClip(Context context, Codec<T> codec,
+                                             List<? super T> items) {
+        if (items == null) {
+            return false;
+        }
+        final CodecHelper.CodecInputAdapter input = new CodecHelper.CodecInputAdapter(codec);
+        if (!getPrimaryClip(context, input)) {
+            return false;
+        }
+        for (Object item : input.getItems()) {
+            //noinspection unchecked
+            items.add((T) item);
+        }
+        return true;
+    }
+
     /**
      * 获取剪切板文件数据
      *
@@ -261,6 +925,19 @@ public class SuperClipboard {
         return getPrimaryClip(context, new FileHelper.FileInputAdapter(file));
     }
 
+    /**
+     * 获取剪切板文件数据
+     *
+     * @param context  Context
+     * @param file     用于写入的文件
+     * @param listener 进度监听，按分块大小回调，未分块时每1MB回调一次
+     * @return 获取成功时返回true
+     */
+    public static boolean getPrimaryClipFile(Context context, File file,
+                                             ProgressListener listener) {
+        return getPrimaryClip(context, new FileHelper.FileInputAdapter(file, listener));
+    }
+
     /**
      * 获取剪切板文件集
      *
@@ -269,9 +946,35 @@ public class SuperClipboard {
      * @return 文件集，结果可能为空
      */
     public static List<File> getPrimaryClipFiles(Context context, File directory) {
+        return getPrimaryClipFiles(context, directory, 0);
+    }
+
+    /**
+     * 获取剪切板文件集
+     *
+     * @param context   Context
+     * @param directory 用于写入的目录
+     * @param flags     标志，如：{@link #FLAG_PARALLEL}
+     * @return 文件集，结果可能为空
+     */
+    public static List<File> getPrimaryClipFiles(Context context, File directory, int flags) {
+        return getPrimaryClipFiles(context, directory, flags, null);
+    }
+
+    /**
+     * 获取剪切板文件集
+     *
+     * @param context   Context
+     * @param directory 用于写入的目录
+     * @param flags     标志，如：{@link #FLAG_PARALLEL}
+     * @param listener  进度监听，按分块大小回调，未分块时每1MB回调一次；并行时在不同线程中回调
+     * @return 文件集，结果可能为空
+     */
+    public static List<File> getPrimaryClipFiles(Context context, File directory, int flags,
+                                                 ProgressListener listener) {
         final FileHelper.DirectoryInputAdapter input =
-                new FileHelper.DirectoryInputAdapter(directory);
-        if (getPrimaryClip(context, input)) {
+                new FileHelper.DirectoryInputAdapter(directory, listener);
+        if (getPrimaryClip(context, input, flags)) {
             final ArrayList<File> items = input.getItems();
             if (!items.isEmpty()) {
                 return items;
@@ -280,6 +983,91 @@ public class SuperClipboard {
         return null;
     }
 
+    /**
+     * 获取剪切板字节数据集
+     * 按子项大小一次分配，不经过临时文件及反序列化
+     *
+     * @param context Context
+     * @param flags   标志，如：{@link #FLAG_PARALLEL}
+     * @return 字节数据集，结果可能为空
+     */
+    public static List<byte[]> getPrimaryClipBytes(Context context, int flags) {
+        final BytesHelper.ByteArrayInputAdapter input = new BytesHelper.ByteArrayInputAdapter();
+        if (getPrimaryClip(context, input, flags)) {
+            final ArrayList<byte[]> items = input.getItems();
+            if (!items.isEmpty()) {
+                return items;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 获取剪切板缓冲区数据集
+     * 按子项大小一次分配，不经过临时文件及反序列化
+     *
+     * @param context Context
+     * @param direct  是否分配直接缓冲区
+     * @param flags   标志，如：{@link #FLAG_PARALLEL}
+     * @return 缓冲区数据集，结果可能为空
+     */
+    public static List<ByteBuffer> getPrimaryClipBuffers(Context context, boolean direct,
+                                                         int flags) {
+        final BytesHelper.ByteBufferInputAdapter input =
+                new BytesHelper.ByteBufferInputAdapter(direct);
+        if (getPrimaryClip(context, input, flags)) {
+            final ArrayList<ByteBuffer> items = input.getItems();
+            if (!items.isEmpty()) {
+                return items;
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * 打开剪切板子项迭代器
+     * 子项仅在迭代到时才读取，使用完毕后需关闭
+     *
+     * @param context Context
+     * @param reader  子项读取器
+     * @return 迭代器，剪切板无数据时结果为空
+     */
+    public static <T> ClipboardIterator<T> openPrimaryClip(Context context,
+                                                           ItemReader<T> reader) {
+        final ClipData.Item[] items = getPrimaryClipItems(context);
+        if (items == null || reader == null) {
+            return null;
+        }
+        return new ClipboardIterator<>(context, items, reader);
+    }
+
+    /**
+     * 打开剪切板序列化数据迭代器
+     * 子项仅在迭代到时才反序列化，使用完毕后需关闭
+     *
+     * @param context Context
+     * @return 迭代器，剪切板无数据时结果为空
+     */
+    public static <T extends Serializable> ClipboardIterator<T> openPrimaryClipSerializables(
+            Context context) {
+        //noinspection unchecked
+        return openPrimaryClip(context,
+                (mimeType, descriptor) -> (T) SerializableHelper.readObject(descriptor));
+    }
+
+    /**
+     * 打开剪切板文件迭代器
+     * 子项仅在迭代到时才写入目录，使用完毕后需关闭
+     *
+     * @param context   Context
+     * @param directory 用于写入的目录
+     * @return 迭代器，剪切板无数据时结果为空
+     */
+    public static ClipboardIterator<File> openPrimaryClipFiles(Context context, File directory) {
+        return openPrimaryClip(context,
+                (mimeType, descriptor) -> FileHelper.copyToDirectory(descriptor, directory));
+    }
 
     /**
      * 判断剪切板是否包含该类型数据
@@ -308,56 +1096,106 @@ public class SuperClipboard {
         if (count <= 0) {
             return false;
         }
-        boolean success = false;
+        final ArrayList<Uri> uris = new ArrayList<>();
         for (int i = 0; i < count; i++) {
-            final Uri uri = data.getItemAt(i).getUri();
+            final ClipData.Item item = data.getItemAt(i);
+            if (InlineHelper.isInline(item)) {
+                // 内联子项数据随剪切板存在
+                if (TextUtils.equals(mimeType, InlineHelper.getMimeType(item))) {
+                    return true;
+                }
+                continue;
+            }
+            final Uri uri = item.getUri();
             if (uri == null) {
                 // 该情况不应该出现
                 return false;
             }
-            if (ClipboardProvider.check(context, mimeType, uri)) {
-                success = true;
-            }
+            uris.add(uri);
         }
-        return success;
+        return !uris.isEmpty() &&
+                ClipboardProvider.check(context, mimeType, uris.toArray(new Uri[0]), false);
     }
 
     /**
-     * 检查剪切板
+     * 异步判断剪切板是否包含该类型数据
+     *
+     * @param context   Context
+     * @param mimeType  MIME类型
+     * @param checkData 是否检查数据
+     * @param executor  回调执行器，为空时在I/O线程回调
+     * @param callback  回调，结果为是否包含该类型数据
+     * @return 任务
+     */
+    public static ClipboardTask containsAsync(Context context, String mimeType,
+                                              boolean checkData, Executor executor,
+                                              Callback<Boolean> callback) {
+        return ClipboardTask.execute(task -> contains(context, mimeType, checkData),
+                executor, callback);
+    }
+
+    /**
+     * 异步检查剪切板
      * 清除不在剪切板内的数据
      *
+     * @param context  Context
+     * @param executor 回调执行器，为空时在I/O线程回调
+     * @param callback 回调，结果始终为空
+     * @return 任务
+     */
+    public static ClipboardTask checkAsync(Context context, Executor executor,
+                                           Callback<Void> callback) {
+        return ClipboardTask.execute(task -> {
+            check(context);
+            return null;
+        }, executor, callback);
+    }
+
+    /**
+     * 检查剪切板
+     * 清除不在剪切板内的数据，仅按索引删除失效的子项，不扫描目录
+     *
      * @param context Context
      */
     public static void check(Context context) {
         final ClipboardManager manager = getClipboardManager(context);
         if (manager == null) {
-            ClipboardProvider.clear(context);
+            delete(context, null);
             return;
         }
         if (!manager.hasPrimaryClip()) {
             if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
                 // Android 10及以上，仅默认输入法或者应用已获取到焦点，否则无法访问剪切板。
-                ClipboardProvider.clear(context);
+                delete(context, null);
             }
             return;
         }
         final ClipData data = manager.getPrimaryClip();
         if (data == null) {
-            ClipboardProvider.clear(context);
+            delete(context, null);
             return;
         }
         final int count = data.getItemCount();
         if (count <= 0) {
             return;
         }
+        final ArrayList<Uri> uris = new ArrayList<>();
         for (int i = 0; i < count; i++) {
-            final Uri uri = data.getItemAt(i).getUri();
-            if (uri != null && ClipboardProvider.check(context, null, uri)) {
+            final ClipData.Item item = data.getItemAt(i);
+            if (InlineHelper.isInline(item)) {
+                // 内联子项没有文件
                 continue;
             }
-            ClipboardProvider.clear(context);
-            return;
+            final Uri uri = item.getUri();
+            if (uri == null) {
+                delete(context, null);
+                return;
+            }
+            uris.add(uri);
         }
+        // 子项缺失时剪切板已失效，全部删除，否则仅删除剪切板以外的子项
+        delete(context, ClipboardProvider.check(context, null, uris.toArray(new Uri[0]), true) ?
+                data : null);
     }
 
     /**
@@ -390,6 +1228,91 @@ public class SuperClipboard {
         boolean write(int position, ParcelFileDescriptor descriptor);
     }
 
+    /**
+     * 已知大小的输出内容提供者
+     * 写入开始前即可判断存储配额是否足够
+     */
+    public interface SizedOutputAdapter extends OutputAdapter {
+
+        /**
+         * 获取大小
+         *
+         * @param position 位置
+         * @return 大小，未知时返回-1
+         */
+        long getLength(int position);
+    }
+
+    /**
+     * 多格式输出内容提供者
+     * 子项以{@link #getMimeType(int)}为首选格式，同时可提供其他格式；子项按延迟写入处理，
+     * 读取方按偏好格式读取时仅写入并传输选中的格式，其他格式不写入文件，仅在当前进程存活时可读取；
+     * 与{@link #FLAG_DEFERRED}相同，仅可在内容提供者所在的进程中使用，其他进程设置时设置失败
+     */
+    public interface MultiOutputAdapter extends OutputAdapter {
+
+        /**
+         * 获取全部MIME类型
+         *
+         * @param position 位置
+         * @return 全部MIME类型，包含首选格式
+         */
+        String[] getMimeTypes(int position);
+
+        /**
+         * 以指定格式写入
+         *
+         * @param position   位置
+         * @param mimeType   MIME类型
+         * @param descriptor 文件
+         * @return 是否成功
+         */
+        boolean write(int position, String mimeType, ParcelFileDescriptor descriptor);
+    }
+
+    /**
+     * 分块输出内容提供者
+     * 启用分块后，大于分块大小的子项按块写入，每块写入后记录已提交的偏移；
+     * 写入中断后，以相同传输标识再次设置剪切板时从最后提交的块继续写入
+     */
+    public interface ChunkedOutputAdapter extends SizedOutputAdapter {
+
+        /**
+         * 获取传输标识
+         *
+         * @param position 位置
+         * @return 传输标识，数据不变时需保持不变，数据变化时需随之变化；为空时不续传
+         */
+        String getKey(int position);
+
+        /**
+         * 写入数据块
+         *
+         * @param position 位置
+         * @param offset   数据偏移
+         * @param length   数据大小
+         * @param channel  文件通道，需自当前位置起写入全部数据，不可关闭
+         * @return 是否成功
+         */
+        boolean write(int position, long offset, long length, FileChannel channel);
+    }
+
+    /**
+     * 进度监听
+     * 在写入或读取子项的线程中回调，并行处理时可能在不同线程中回调，实现需保证线程安全
+     */
+    public interface ProgressListener {
+
+        /**
+         * 进度变化
+         *
+         * @param position 子项位置
+         * @param done     已完成大小，续传时从已提交的偏移开始
+         * @param total    总大小，未知时为-1
+         */
+        void onProgress(int position, long done, long total);
+    }
+
     /**
      * 输入内容提供者
      */
@@ -404,4 +1327,103 @@ public class SuperClipboard {
          */
         boolean read(String mimeType, ParcelFileDescriptor descriptor);
     }
+
+    /**
+     * 内存映射输入内容提供者
+     */
+    public interface MappedInputAdapter {
+
+        /**
+         * 读取
+         *
+         * @param mimeType MIME类型
+         * @param buffer   只读的文件内存映射
+         * @return 读取成功时返回true
+         */
+        boolean read(String mimeType, MappedByteBuffer buffer);
+    }
+
+    /**
+     * 并行输入内容提供者
+     * 子项按位置读取，可能在不同线程中乱序完成，实现需保证线程安全
+     */
+    public interface ParallelInputAdapter extends InputAdapter {
+
+        /**
+         * 开始读取
+         *
+         * @param count 子项总数
+         */
+        void onStart(int count);
+
+        /**
+         * 读取
+         *
+         * @param position   位置
+         * @param mimeType   MIME类型
+         * @param descriptor 文件
+         * @return 读取成功时返回true
+         */
+        boolean read(int position, String mimeType, ParcelFileDescriptor descriptor);
+    }
+
+    /**
+     * 异步任务回调
+     */
+    public interface Callback<T> {
+
+        /**
+         * 任务完成
+         *
+         * @param result 结果
+         */
+        void onResult(T result);
+
+        /**
+         * 任务已取消
+         */
+        default void onCancelled() {
+        }
+    }
+
+    /**
+     * 子项读取器
+     */
+    public interface ItemReader<T> {
+
+        /**
+         * 读取
+         *
+         * @param mimeType   MIME类型
+         * @param descriptor 文件
+         * @return 子项
+         * @throws Exception 读取失败
+         */
+        T read(String mimeType, ParcelFileDescriptor descriptor) throws Exception;
+    }
+
+    /**
+     * 编解码器
+     * 以紧凑的二进制格式读写子项，避免Java序列化的反射及类描述开销
+     */
+    public interface Codec<T> {
+
+        /**
+         * 编码
+         *
+         * @param item   子项
+         * @param output 输出
+         * @throws IOException 编码失败
+         */
+        void encode(T item, DataOutput output) throws IOException;
+
+        /**
+         * 解码
+         *
+         * @param input 输入
+         * @return 子项
+         * @throws IOException 解码失败
+         */
+        T decode(DataInput input) throws IOException;
+    }
 }
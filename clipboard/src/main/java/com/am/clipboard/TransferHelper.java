@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2021 AlexMofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.am.clipboard;
+
+import android.os.ParcelFileDescriptor;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 分块传输辅助
+ * 分块写入的子项先写入传输文件夹中以传输标识命名的分块文件，每块写入并同步后记录已提交的偏移；
+ * 中断后以相同标识再次写入时截断至已提交的偏移继续写入，写入完成后移为子项暂存文件提交。
+ * 长时间未续传的分块文件将被删除。
+ */
+class TransferHelper {
+
+    static final long MIN_CHUNK_SIZE = 64 * 1024;
+    private static final long PROGRESS_STEP = 1024 * 1024;// 未分块时读取进度的回调间隔
+    private static final long EXPIRY = 24 * 60 * 60 * 1000;// 分块文件的保留时长
+    private static final String DIRECTORY_TRANSFER = "transfers";
+    private static final String SUFFIX_PART = ".part";
+    private static final String SUFFIX_STATE = ".state";
+    private static final int ID_LENGTH = 64;
+    private static volatile long sChunkSize;
+
+    private TransferHelper() {
+        //no instance
+    }
+
+    /**
+     * 设置分块大小
+     *
+     * @param size 分块大小，最小为64KB，不大于0时不分块
+     */
+    static void setChunkSize(long size) {
+        sChunkSize = size <= 0 ? 0 : Math.max(size, MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * 获取分块大小
+     *
+     * @return 分块大小，为0时不分块
+     */
+    static long getChunkSize() {
+        return sChunkSize;
+    }
+
+    /**
+     * 获取传输标识
+     *
+     * @param key 输出内容提供者给出的标识
+     * @return SHA-256摘要的十六进制字符串，可作为文件名，计算失败时返回null
+     */
+    static String getId(String key) {
+        try {
+            final byte[] bytes =
+                    MessageDigest.getInstance("SHA-256").digest(key.getBytes("UTF-8"));
+            final StringBuilder builder = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16))
+                        .append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 判断是否为有效的传输标识
+     *
+     * @param id 传输标识
+     * @return 有效时返回true
+     */
+    static boolean isId(String id) {
+        if (id == null || id.length() != ID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < ID_LENGTH; i++) {
+            if (Character.digit(id.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static File getFile(File directory, String id, String suffix) {
+        return new File(new File(directory, DIRECTORY_TRANSFER), id + suffix);
+    }
+
+    /**
+     * 获取分块文件
+     *
+     * @param directory 剪切板文件夹
+     * @param id        传输标识
+     * @return 分块文件
+     */
+    static File getPartFile(File directory, String id) {
+        return getFile(directory, id, SUFFIX_PART);
+    }
+
+    /**
+     * 准备续传
+     * 截断分块文件至已提交的偏移，记录的大小与本次不一致或记录无效时从头写入
+     *
+     * @param directory 剪切板文件夹
+     * @param id        传输标识
+     * @param length    子项大小
+     * @return 已提交的偏移，失败时返回-1
+     */
+    static long resume(File directory, String id, long length) {
+        final File part = getPartFile(directory, id);
+        //noinspection ResultOfMethodCallIgnored
+        part.getParentFile().mkdirs();
+        long offset;
+        try (final DataInputStream input = new DataInputStream(
+                new FileInputStream(getFile(directory, id, SUFFIX_STATE)))) {
+            offset = input.readLong() == length ? input.readLong() : 0;
+        } catch (IOException e) {
+            offset = 0;
+        }
+        if (offset < 0 || offset > length || offset > part.length()) {
+            offset = 0;
+        }
+        try (final RandomAccessFile file = new RandomAccessFile(part, "rw")) {
+            // 丢弃最后提交之后写入的数据
+            file.setLength(offset);
+        } catch (IOException e) {
+            return -1;
+        }
+        return offset;
+    }
+
+    /**
+     * 记录已提交的偏移，需在数据同步后调用
+     *
+     * @param directory 剪切板文件夹
+     * @param id        传输标识
+     * @param length    子项大小
+     * @param offset    已提交的偏移
+     * @return 记录成功时返回true
+     */
+    static boolean record(File directory, String id, long length, long offset) {
+        try (final RandomAccessFile file =
+                     new RandomAccessFile(getFile(directory, id, SUFFIX_STATE), "rw")) {
+            file.writeLong(length);
+            file.writeLong(offset);
+            file.getChannel().force(false);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 完成传输，分块文件移为暂存文件
+     *
+     * @param directory 剪切板文件夹
+     * @param id        传输标识
+     * @param target    子项暂存文件
+     * @return 成功时返回true
+     */
+    static boolean finish(File directory, String id, File target) {
+        if (!getPartFile(directory, id).renameTo(target)) {
+            return false;
+        }
+        FileHelper.delete(getFile(directory, id, SUFFIX_STATE));
+        return true;
+    }
+
+    /**
+     * 后台删除长时间未续传的分块文件
+     *
+     * @param directory 剪切板文件夹
+     */
+    static void cleanup(File directory) {
+        try {
+            // 列出文件同样在后台执行，不阻塞内容提供者的创建
+            ExecutorHelper.getHousekeepingExecutor().execute(() -> {
+                final File[] children = new File(directory, DIRECTORY_TRANSFER).listFiles();
+                if (children == null) {
+                    return;
+                }
+                final long expiry = System.currentTimeMillis() - EXPIRY;
+                for (File child : children) {
+                    if (child.lastModified() < expiry) {
+                        FileHelper.delete(child);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 下次启动时再删除
+        }
+    }
+
+    /**
+     * 复制文件描述符到文件并回调进度
+     * 可定位的文件描述符按块由内核直接传输，管道等不可定位的文件描述符使用缓冲区复制
+     *
+     * @param source   源文件描述符，复制完成后关闭
+     * @param target   目标文件
+     * @param position 子项位置
+     * @param listener 进度监听
+     * @return 复制成功时返回true
+     */
+    static boolean copy(ParcelFileDescriptor source, File target, int position,
+                        SuperClipboard.ProgressListener listener) {
+        final long chunk = sChunkSize;
+        final long step = chunk > 0 ? chunk : PROGRESS_STEP;
+        try (final FileInputStream input =
+                     new ParcelFileDescriptor.AutoCloseInputStream(source);
+             final FileOutputStream output = new FileOutputStream(target)) {
+            final long total = source.getStatSize();
+            listener.onProgress(position, 0, total);
+            if (total >= 0) {
+                final FileChannel in = input.getChannel();
+                final FileChannel out = output.getChannel();
+                long done = 0;
+                while (done < total) {
+                    final long end = Math.min(done + step, total);
+                    while (done < end) {
+                        final long count = out.transferFrom(in, done, end - done);
+                        if (count <= 0) {
+                            return false;
+                        }
+                        done += count;
+                    }
+                    listener.onProgress(position, done, total);
+                }
+                return true;
+            }
+            final byte[] buffer = BufferHelper.obtain();
+            try {
+                long done = 0;
+                long reported = 0;
+                int count;
+                while ((count = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, count);
+                    done += count;
+                    if (done - reported >= step) {
+                        reported = done;
+                        listener.onProgress(position, done, total);
+                    }
+                }
+                if (done != reported) {
+                    listener.onProgress(position, done, total);
+                }
+            } finally {
+                BufferHelper.recycle(buffer);
+            }
+            return true;
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.am.clipboard;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Index replay, eviction and deduplication, runs on the development machine (host).
+ */
+public class ClipboardIndexTest {
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+    private File mDirectory;
+    private MemoryPreferences mPreferences;
+
+    @Before
+    public void setUp() {
+        mDirectory = mFolder.getRoot();
+        mPreferences = new MemoryPreferences();
+    }
+
+    private ClipboardIndex newIndex() {
+        return new ClipboardIndex(mDirectory, new ClipboardSettings(mPreferences));
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(data);
+        }
+    }
+
+    private static boolean copy(ClipboardIndex index, String name, byte[] data,
+                                boolean deduplicate) throws IOException {
+        assertTrue(index.add(name, null, data.length));
+        write(index.getStagingFile(name), data);
+        return index.commit(name, deduplicate);
+    }
+
+    private static HashSet<String> setOf(String... names) {
+        final HashSet<String> set = new HashSet<>();
+        Collections.addAll(set, names);
+        return set;
+    }
+
+    private int countBlobs() {
+        int count = 0;
+        final File[] shards = new File(mDirectory, "blobs").listFiles();
+        if (shards != null) {
+            for (File shard : shards) {
+                final File[] blobs = shard.listFiles();
+                count += blobs == null ? 0 : blobs.length;
+            }
+        }
+        return count;
+    }
+
+    private File getItemFile(String name) {
+        return new File(new File(new File(mDirectory, "items"), name.substring(0, 2)), name);
+    }
+
+    @Test
+    public void replay_restoresCommittedClip() throws IOException {
+        final ClipboardIndex index = newIndex();
+        assertTrue(copy(index, "a1", new byte[10], false));
+        assertTrue(copy(index, "b1", new byte[20], false));
+        index.removeExcept(setOf("a1", "b1"));
+
+        final ClipboardIndex replayed = newIndex();
+        assertTrue(replayed.contains("a1"));
+        assertTrue(replayed.contains("b1"));
+        assertEquals(10, replayed.getSize("a1"));
+        assertEquals(20, replayed.getSize("b1"));
+        assertEquals(1, replayed.getHistory().length);
+        assertEquals(2, replayed.getHistory(replayed.getHistory()[0]).length);
+    }
+
+    @Test
+    public void replay_dropsUncommittedItems() throws IOException {
+        final ClipboardIndex index = newIndex();
+        assertTrue(copy(index, "a1", new byte[10], false));
+        index.removeExcept(setOf("a1"));
+        // Crashed while writing
+        assertTrue(index.add("b1", null, 10));
+        final File staging = index.getStagingFile("b1");
+        write(staging, new byte[5]);
+
+        final ClipboardIndex replayed = newIndex();
+        assertTrue(replayed.contains("a1"));
+        assertFalse(replayed.contains("b1"));
+        assertFalse(staging.exists());
+    }
+
+    @Test
+    public void replay_dropsCommittedItemsOutsideClip() throws IOException {
+        final ClipboardIndex index = newIndex();
+        assertTrue(copy(index, "a1", new byte[10], false));
+        index.removeExcept(setOf("a1"));
+        // Crashed before becoming the current clip
+        assertTrue(copy(index, "b1", new byte[10], false));
+
+        final ClipboardIndex replayed = newIndex();
+        assertTrue(replayed.contains("a1"));
+        assertFalse(replayed.contains("b1"));
+        assertFalse(getItemFile("b1").exists());
+    }
+
+    @Test
+    public void replay_dropsItemsWithLostData() throws IOException {
+        final ClipboardIndex index = newIndex();
+        assertTrue(copy(index, "a1", new byte[10], false));
+        index.removeExcept(setOf("a1"));
+        // The system crashed before the data reached the disk
+        try (RandomAccessFile file = new RandomAccessFile(getItemFile("a1"), "rw")) {
+            file.setLength(4);
+        }
+
+        assertFalse(newIndex().contains("a1"));
+    }
+
+    @Test
+    public void replay_afterTornTail_keepsCommittedClip() throws IOException {
+        final ClipboardIndex index = newIndex();
+        assertTrue(copy(index, "a1", new byte[10], false));
+        index.removeExcept(setOf("a1"));
+        try (FileOutputStream output = new FileOutputStream(
+                new File(mDirectory, "journal"), true)) {
+            output.write("A b1 te".getBytes("UTF-8"));
+        }
+
+        final ClipboardIndex replayed = newIndex();
+        assertTrue(replayed.contains("a1"));
+        assertFalse(replayed.contains("b1"));
+        assertTrue(copy(replayed, "c1", new byte[10], false));
+        replayed.removeExcept(setOf("c1"));
+        assertTrue(newIndex().contains("c1"));
+    }
+
+    @Test
+    public void ensureQuota_evictsLeastRecentlyAccessedHistoryFirst() throws IOException {
+        mPreferences.put(ClipboardSettings.KEY_QUOTA_ITEMS, 3)
+                .put(ClipboardSettings.KEY_HISTORY_SIZE, 2);
+        final ClipboardIndex index = newIndex();
+        assertTrue(copy(index, "a1", new byte[10], false));
+        index.removeExcept(setOf("a1"));
+        assertTrue(copy(index, "b1", new byte[10], false));
+        index.removeExcept(setOf("b1"));
+        assertTrue(copy(index, "c1", new byte[10], false));
+        index.removeExcept(setOf("c1"));
+        final long[] generations = index.getHistory();
+        assertEquals(3, generations.length);
+        // The older clip was pasted more recently
+        index.get("b1").accessed = 1000;
+        index.get("a1").accessed = 2000;
+
+        assertTrue(copy(index, "d1", new byte[10], false));
+        assertTrue(index.contains("a1"));
+        assertFalse(index.contains("b1"));
+        assertTrue(index.contains("c1"));
+        assertFalse(getItemFile("b1").exists());
+        // The clip that lost an item leaves the history
+        assertNull(index.getHistory(generations[1]));
+        assertNotNull(index.getHistory(generations[2]));
+        assertEquals(2, index.getHistory().length);
+    }
+
+    @Test
+    public void ensureQuota_overBytes_evictsHistory() throws IOException {
+        mPreferences.put(ClipboardSettings.KEY_QUOTA_BYTES, 25)
+                .put(ClipboardSettings.KEY_HISTORY_SIZE, 2);
+        final ClipboardIndex index = newIndex();
+        assertTrue(copy(index, "a1", new byte[10], false));
+        index.removeExcept(setOf("a1"));
+        assertTrue(copy(index, "b1", new byte[10], false));
+        index.removeExcept(setOf("b1"));
+
+        assertTrue(copy(index, "c1", new byte[10], false));
+        assertFalse(index.contains("a1"));
+        assertTrue(index.contains("b1"));
+        assertTrue(index.contains("c1"));
+    }
+
+    @Test
+    public void ensureQuota_neverEvictsCurrentClip() throws IOException {
+        mPreferences.put(ClipboardSettings.KEY_QUOTA_ITEMS, 1);
+        final ClipboardIndex index = newIndex();
+        assertTrue(copy(index, "a1", new byte[10], false));
+        index.removeExcept(setOf("a1"));
+
+        assertFalse(index.add("b1", null, 10));
+        assertTrue(index.contains("a1"));
+        assertTrue(getItemFile("a1").exists());
+        assertEquals(1, index.getHistory().length);
+    }
+
+    @Test
+    public void ensureQuota_evictionSurvivesReplay() throws IOException {
+        mPreferences.put(ClipboardSettings.KEY_QUOTA_ITEMS, 2)
+                .put(ClipboardSettings.KEY_HISTORY_SIZE, 2);
+        final ClipboardIndex index = newIndex();
+        assertTrue(copy(index, "a1", new byte[10], false));
+        index.removeExcept(setOf("a1"));
+        assertTrue(copy(index, "b1", new byte[10], false));
+        index.removeExcept(setOf("b1"));
+        assertTrue(copy(index, "c1", new byte[10], false));
+        index.removeExcept(setOf("c1"));
+
+        final ClipboardIndex replayed = newIndex();
+        assertFalse(replayed.contains("a1"));
+        assertTrue(replayed.contains("b1"));
+        assertTrue(replayed.contains("c1"));
+        assertEquals(2, replayed.getHistory().length);
+    }
+
+    @Test
+    public void deduplicate_sharesBlobUntilLastReference() throws IOException {
+        mPreferences.put(ClipboardSettings.KEY_HISTORY_SIZE, 2);
+        final ClipboardIndex index = newIndex();
+        final byte[] data = {1, 2, 3, 4};
+        assertTrue(copy(index, "a1", data, true));
+        index.removeExcept(setOf("a1"));
+        assertTrue(copy(index, "b1", data, true));
+        index.removeExcept(setOf("b1"));
+        assertEquals(1, countBlobs());
+
+        assertEquals(1, index.remove(new String[]{"a1"}));
+        assertEquals(1, countBlobs());
+        assertEquals(data.length, index.getSize("b1"));
+        assertEquals(1, index.remove(new String[]{"b1"}));
+        assertEquals(0, countBlobs());
+    }
+
+    @Test
+    public void deduplicate_replayRestoresReferences() throws IOException {
+        final ClipboardIndex index = newIndex();
+        final byte[] data = {1, 2, 3, 4};
+        assertTrue(copy(index, "a1", data, true));
+        assertTrue(copy(index, "b1", data, true));
+        index.removeExcept(setOf("a1", "b1"));
+
+        final ClipboardIndex replayed = newIndex();
+        assertEquals(1, countBlobs());
+        replayed.remove(new String[]{"a1"});
+        assertEquals(1, countBlobs());
+        replayed.remove(new String[]{"b1"});
+        assertEquals(0, countBlobs());
+    }
+
+    @Test
+    public void deduplicate_countsSharedBytesOnce() throws IOException {
+        mPreferences.put(ClipboardSettings.KEY_QUOTA_BYTES, 15);
+        final ClipboardIndex index = newIndex();
+        final byte[] data = new byte[10];
+        assertTrue(copy(index, "a1", data, true));
+        // Unknown length, nothing reserved
+        assertTrue(index.add("b1", null, ClipboardIndex.Item.SIZE_UNKNOWN));
+        write(index.getStagingFile("b1"), data);
+        assertTrue(index.commit("b1", true));
+        index.removeExcept(setOf("a1", "b1"));
+        assertFalse(index.add("c1", null, 10));
+        assertTrue(index.add("c1", null, 5));
+    }
+}
@@ -0,0 +1,86 @@
+package com.am.clipboard;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Journal parsing and append, runs on the development machine (host).
+ */
+public class ClipboardJournalTest {
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static void write(File file, String text) throws IOException {
+        try (FileOutputStream output = new FileOutputStream(file, true)) {
+            output.write(text.getBytes(CHARSET));
+        }
+    }
+
+    @Test
+    public void read_returnsAppendedRecords() {
+        final File directory = mFolder.getRoot();
+        final ClipboardJournal journal = new ClipboardJournal(directory);
+        assertFalse(journal.exists());
+        assertTrue(journal.append(ClipboardJournal.RECORD_ADD, "a", "text", "1"));
+        assertTrue(journal.append(ClipboardJournal.RECORD_COMMIT, "a", "5", ""));
+        final List<String[]> records = new ClipboardJournal(directory).read();
+        assertNotNull(records);
+        assertEquals(2, records.size());
+        assertArrayEquals(new String[]{"A", "a", "text", "1"}, records.get(0));
+        assertArrayEquals(new String[]{"C", "a", "5", ""}, records.get(1));
+    }
+
+    @Test
+    public void read_ignoresTornTail() throws IOException {
+        final File directory = mFolder.getRoot();
+        write(new File(directory, "journal"), "A a text 1\nC a 5 \nA b te");
+        final ClipboardJournal journal = new ClipboardJournal(directory);
+        final List<String[]> records = journal.read();
+        assertNotNull(records);
+        assertEquals(2, records.size());
+        assertEquals(2, journal.getCount());
+    }
+
+    @Test
+    public void append_afterTornTail_keepsRecordIntact() throws IOException {
+        final File directory = mFolder.getRoot();
+        write(new File(directory, "journal"), "A a text 1\nA b te");
+        final ClipboardJournal journal = new ClipboardJournal(directory);
+        assertEquals(1, journal.read().size());
+        assertTrue(journal.append(ClipboardJournal.RECORD_ADD, "c", "text", "2"));
+        final List<String[]> records = new ClipboardJournal(directory).read();
+        assertNotNull(records);
+        assertEquals(2, records.size());
+        assertArrayEquals(new String[]{"A", "a", "text", "1"}, records.get(0));
+        assertArrayEquals(new String[]{"A", "c", "text", "2"}, records.get(1));
+    }
+
+    @Test
+    public void rewrite_replacesRecords() {
+        final File directory = mFolder.getRoot();
+        final ClipboardJournal journal = new ClipboardJournal(directory);
+        assertTrue(journal.append(ClipboardJournal.RECORD_ADD, "a", "text", "1"));
+        assertTrue(journal.append(ClipboardJournal.RECORD_DELETE, "a"));
+        assertTrue(journal.rewrite(Collections.singletonList(
+                new String[]{ClipboardJournal.RECORD_LIVE, "1"}), false));
+        assertEquals(1, journal.getCount());
+        assertTrue(journal.append(ClipboardJournal.RECORD_ADD, "b", "text", "2"));
+        final List<String[]> records = new ClipboardJournal(directory).read();
+        assertNotNull(records);
+        assertEquals(2, records.size());
+        assertArrayEquals(new String[]{"L", "1"}, records.get(0));
+        assertArrayEquals(new String[]{"A", "b", "text", "2"}, records.get(1));
+    }
+}
@@ -0,0 +1,154 @@
+package com.am.clipboard;
+
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory SharedPreferences for host tests.
+ */
+class MemoryPreferences implements SharedPreferences {
+
+    private final HashMap<String, Object> mValues = new HashMap<>();
+
+    MemoryPreferences put(String key, long value) {
+        mValues.put(key, value);
+        return this;
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        return new HashMap<>(mValues);
+    }
+
+    @Override
+    public String getString(String key, String defValue) {
+        final Object value = mValues.get(key);
+        return value == null ? defValue : (String) value;
+    }
+
+    @Override
+    public Set<String> getStringSet(String key, Set<String> defValues) {
+        final Object value = mValues.get(key);
+        //noinspection unchecked
+        return value == null ? defValues : (Set<String>) value;
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        final Object value = mValues.get(key);
+        return value == null ? defValue : (Integer) value;
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        final Object value = mValues.get(key);
+        return value == null ? defValue : (Long) value;
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        final Object value = mValues.get(key);
+        return value == null ? defValue : (Float) value;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        final Object value = mValues.get(key);
+        return value == null ? defValue : (Boolean) value;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return mValues.containsKey(key);
+    }
+
+    @Override
+    public Editor edit() {
+        return new MemoryEditor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(
+            OnSharedPreferenceChangeListener listener) {
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(
+            OnSharedPreferenceChangeListener listener) {
+    }
+
+    private final class MemoryEditor implements Editor {
+
+        private final HashMap<String, Object> mChanges = new HashMap<>();
+        private boolean mClear;
+
+        private Editor set(String key, Object value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putString(String key, String value) {
+            return set(key, value);
+        }
+
+        @Override
+        public Editor putStringSet(String key, Set<String> values) {
+            return set(key, values);
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            return set(key, value);
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            return set(key, value);
+        }
+
+        @Override
+        public Editor putFloat(String key, float value) {
+            return set(key, value);
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            return set(key, value);
+        }
+
+        @Override
+        public Editor remove(String key) {
+            return set(key, null);
+        }
+
+        @Override
+        public Editor clear() {
+            mClear = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            if (mClear) {
+                mValues.clear();
+            }
+            for (Map.Entry<String, Object> entry : mChanges.entrySet()) {
+                if (entry.getValue() == null) {
+                    mValues.remove(entry.getKey());
+                } else {
+                    mValues.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void apply() {
+            commit();
+        }
+    }
+}
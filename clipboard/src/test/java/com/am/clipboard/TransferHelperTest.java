@@ -0,0 +1,131 @@
+package com.am.clipboard;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Chunked transfer resume state, runs on the development machine (host).
+ */
+public class TransferHelperTest {
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+    private File mDirectory;
+    private String mId;
+
+    @Before
+    public void setUp() {
+        mDirectory = mFolder.getRoot();
+        mId = TransferHelper.getId("content://provider/item/1");
+    }
+
+    @After
+    public void tearDown() {
+        TransferHelper.setChunkSize(0);
+    }
+
+    private void writePart(int size) throws IOException {
+        try (FileOutputStream output = new FileOutputStream(
+                TransferHelper.getPartFile(mDirectory, mId), true)) {
+            output.write(new byte[size]);
+        }
+    }
+
+    private File getStateFile() {
+        return new File(new File(mDirectory, "transfers"), mId + ".state");
+    }
+
+    @Test
+    public void setChunkSize_clampsToMinimum() {
+        TransferHelper.setChunkSize(1);
+        assertEquals(TransferHelper.MIN_CHUNK_SIZE, TransferHelper.getChunkSize());
+        TransferHelper.setChunkSize(1024 * 1024);
+        assertEquals(1024 * 1024, TransferHelper.getChunkSize());
+        TransferHelper.setChunkSize(-1);
+        assertEquals(0, TransferHelper.getChunkSize());
+    }
+
+    @Test
+    public void getId_isStableHex() {
+        assertEquals(mId, TransferHelper.getId("content://provider/item/1"));
+        assertNotEquals(mId, TransferHelper.getId("content://provider/item/2"));
+        assertTrue(TransferHelper.isId(mId));
+        assertFalse(TransferHelper.isId(null));
+        assertFalse(TransferHelper.isId(mId.substring(1)));
+        assertFalse(TransferHelper.isId("../" + mId.substring(3)));
+    }
+
+    @Test
+    public void resume_withoutState_startsOver() throws IOException {
+        assertEquals(0, TransferHelper.resume(mDirectory, mId, 1000));
+        writePart(300);
+        assertEquals(0, TransferHelper.resume(mDirectory, mId, 1000));
+        assertEquals(0, TransferHelper.getPartFile(mDirectory, mId).length());
+    }
+
+    @Test
+    public void resume_afterRecord_truncatesToCommittedOffset() throws IOException {
+        assertEquals(0, TransferHelper.resume(mDirectory, mId, 1000));
+        writePart(400);
+        assertTrue(TransferHelper.record(mDirectory, mId, 1000, 400));
+        // Written after the last commit
+        writePart(100);
+
+        assertEquals(400, TransferHelper.resume(mDirectory, mId, 1000));
+        assertEquals(400, TransferHelper.getPartFile(mDirectory, mId).length());
+    }
+
+    @Test
+    public void resume_withChangedLength_startsOver() throws IOException {
+        assertEquals(0, TransferHelper.resume(mDirectory, mId, 1000));
+        writePart(400);
+        assertTrue(TransferHelper.record(mDirectory, mId, 1000, 400));
+
+        assertEquals(0, TransferHelper.resume(mDirectory, mId, 2000));
+        assertEquals(0, TransferHelper.getPartFile(mDirectory, mId).length());
+    }
+
+    @Test
+    public void resume_withOffsetBeyondPart_startsOver() throws IOException {
+        assertEquals(0, TransferHelper.resume(mDirectory, mId, 1000));
+        writePart(100);
+        // The part file lost data the state claims was committed
+        assertTrue(TransferHelper.record(mDirectory, mId, 1000, 400));
+
+        assertEquals(0, TransferHelper.resume(mDirectory, mId, 1000));
+    }
+
+    @Test
+    public void resume_withTornState_startsOver() throws IOException {
+        assertEquals(0, TransferHelper.resume(mDirectory, mId, 1000));
+        writePart(400);
+        try (FileOutputStream output = new FileOutputStream(getStateFile())) {
+            output.write(new byte[]{0, 0, 0, 0});
+        }
+
+        assertEquals(0, TransferHelper.resume(mDirectory, mId, 1000));
+    }
+
+    @Test
+    public void finish_movesPartAndDropsState() throws IOException {
+        assertEquals(0, TransferHelper.resume(mDirectory, mId, 1000));
+        writePart(1000);
+        assertTrue(TransferHelper.record(mDirectory, mId, 1000, 1000));
+        final File target = new File(mDirectory, "item.tmp");
+
+        assertTrue(TransferHelper.finish(mDirectory, mId, target));
+        assertEquals(1000, target.length());
+        assertFalse(TransferHelper.getPartFile(mDirectory, mId).exists());
+        assertFalse(getStateFile().exists());
+        assertEquals(0, TransferHelper.resume(mDirectory, mId, 1000));
+    }
+}